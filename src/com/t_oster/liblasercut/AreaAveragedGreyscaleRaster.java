@@ -0,0 +1,133 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.util.Arrays;
+
+/**
+ * A scaled down copy of a GreyscaleRaster, where every pixel is the
+ * average of the area of the source it covers, weighted by the covered
+ * fraction of each source pixel.
+ * Averaging in the greyscale domain keeps the tone of fine structures
+ * which would alias or vanish with nearest neighbour sampling, so the
+ * result can be used as a proxy for previews of the dithered image.
+ *
+ * The scaled image is computed once in the constructor, reading every
+ * source pixel exactly once.
+ */
+public class AreaAveragedGreyscaleRaster implements GreyscaleRaster
+{
+
+  private final int width;
+  private final int height;
+  private final byte[] pixels;
+
+  /**
+   * @param src the image to scale
+   * @param width the new width, at most src.getWidth()
+   * @param height the new height, at most src.getHeight()
+   */
+  public AreaAveragedGreyscaleRaster(GreyscaleRaster src, int width, int height)
+  {
+    if (width < 1 || height < 1 || width > src.getWidth() || height > src.getHeight())
+    {
+      throw new IllegalArgumentException("Invalid size "+width+"x"+height+" for an image of "+src.getWidth()+"x"+src.getHeight());
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = new byte[width * height];
+    int srcWidth = src.getWidth();
+    int srcHeight = src.getHeight();
+    //column weights: source column sx contributes to target columns
+    //first[sx] (weight w0[sx]) and first[sx]+1 (the rest), in units of
+    //1/srcWidth of a target pixel
+    int[] first = new int[srcWidth];
+    int[] w0 = new int[srcWidth];
+    for (int sx = 0; sx < srcWidth; sx++)
+    {
+      //source pixel covers [sx*width, (sx+1)*width) in units where a
+      //target pixel is srcWidth wide
+      int start = sx * width;
+      int end = start + width;
+      first[sx] = start / srcWidth;
+      w0[sx] = Math.min(end, (first[sx] + 1) * srcWidth) - start;
+    }
+    long[] sums = new long[width];
+    long[] rowSums = new long[width];
+    int targetY = 0;
+    long targetYEnd = srcHeight;
+    long area = (long) srcWidth * srcHeight;
+    for (int sy = 0; sy < srcHeight; sy++)
+    {
+      Arrays.fill(rowSums, 0);
+      for (int sx = 0; sx < srcWidth; sx++)
+      {
+        int grey = src.getGreyScale(sx, sy);
+        rowSums[first[sx]] += (long) grey * w0[sx];
+        if (w0[sx] < width)
+        {
+          rowSums[first[sx] + 1] += (long) grey * (width - w0[sx]);
+        }
+      }
+      //same split in y direction
+      long start = (long) sy * height;
+      long end = start + height;
+      long inFirst = Math.min(end, targetYEnd) - start;
+      for (int x = 0; x < width; x++)
+      {
+        sums[x] += rowSums[x] * inFirst;
+      }
+      if (end >= targetYEnd)
+      {
+        for (int x = 0; x < width; x++)
+        {
+          pixels[targetY * width + x] = (byte) Math.max(0, Math.min(255, (sums[x] + area / 2) / area));
+          sums[x] = rowSums[x] * (end - targetYEnd);
+        }
+        targetY++;
+        targetYEnd += srcHeight;
+      }
+    }
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return pixels[y * width + x] & 0xFF;
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    pixels[y * width + x] = (byte) Math.max(0, Math.min(255, grey));
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    return false;
+  }
+}
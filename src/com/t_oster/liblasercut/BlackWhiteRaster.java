@@ -36,7 +36,13 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
     GRID,
     HALFTONE,
     BRIGHTENED_HALFTONE,
-    NONE
+    NONE,
+    JARVIS_JUDICE_NINKE,
+    STUCKI,
+    SIERRA,
+    TWO_ROW_SIERRA,
+    SIERRA_LITE,
+    ATKINSON
   }
   private int width;
   private int height;
@@ -62,6 +68,18 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
         return new BrightenedHalftone();
       case NONE:
         return new None();
+      case JARVIS_JUDICE_NINKE:
+        return new JarvisJudiceNinke();
+      case STUCKI:
+        return new Stucki();
+      case SIERRA:
+        return new Sierra();
+      case TWO_ROW_SIERRA:
+        return new TwoRowSierra();
+      case SIERRA_LITE:
+        return new SierraLite();
+      case ATKINSON:
+        return new Atkinson();
       default:
         throw new IllegalArgumentException("Desired Dithering Algorithm ("+alg+") does not exist");
     }
@@ -138,6 +156,18 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
   {
     return raster[x][y];
   }
+
+  /**
+   * Sets 8 pixels at once. The bit order is the same as in getByte.
+   * Bits of pixels beyond the width of the raster have to be 0.
+   * @param x the x index of the byte
+   * @param y the y offset
+   * @param value the new pixels
+   */
+  public void setByte(int x, int y, byte value)
+  {
+    raster[x][y] = value;
+  }
   
   /**
    * Convenience function to pretend this B&W image is greyscale
@@ -155,6 +185,11 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
     this.setBlack(x, y, color < 128);
   }
 
+  public boolean requiresSequentialReads()
+  {
+    return false;
+  }
+
   public int getWidth()
   {
     return width;
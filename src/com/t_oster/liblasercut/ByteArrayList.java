@@ -46,8 +46,9 @@ public class ByteArrayList extends AbstractList<Byte> {
 
   /**
    * Most uses of ByteArrayList know their size up front, but some may add
-   * a few elements onto the beginning or end.  A small additive growth is 
-   * sufficient to support them.  It is preferred for callers to hold onto
+   * a few elements onto the beginning or end.  The array grows by at least
+   * this amount, or doubles if that is more, so that appending stays
+   * amortized O(1).  It is preferred for callers to hold onto
    * and reuse the ByteArrayList to avoid reallocation.
    */
   private static final int GROW_SIZE = 32;
@@ -64,6 +65,108 @@ public class ByteArrayList extends AbstractList<Byte> {
     return data[start + index];
   }
 
+  /**
+   * Same as get, but without boxing the result.
+   */
+  public byte getByte(int index) {
+    return data[start + index];
+  }
+
+  /**
+   * Same as set, but without boxing.
+   */
+  public void setByte(int index, byte v) {
+    data[start + index] = v;
+  }
+
+  /**
+   * Appends one byte without boxing.
+   */
+  public void addByte(byte v) {
+    if (start + size >= data.length) {
+      growTail(1);
+    }
+    data[start + size] = v;
+    size++;
+  }
+
+  /**
+   * Appends len bytes of src, starting at off.
+   */
+  public void addAll(byte[] src, int off, int len) {
+    if (start + size + len > data.length) {
+      growTail(len);
+    }
+    System.arraycopy(src, off, data, start + size, len);
+    size += len;
+  }
+
+  /**
+   * Removes all leading elements equal to v.
+   * @return the number of removed elements
+   */
+  public int trimLeading(byte v) {
+    int n = 0;
+    while (n < size && data[start + n] == v) {
+      n++;
+    }
+    start += n;
+    size -= n;
+    return n;
+  }
+
+  /**
+   * Removes all trailing elements equal to v.
+   * @return the number of removed elements
+   */
+  public int trimTrailing(byte v) {
+    int n = 0;
+    while (n < size && data[start + size - 1 - n] == v) {
+      n++;
+    }
+    size -= n;
+    return n;
+  }
+
+  /**
+   * Reverses the order of the elements in place.
+   */
+  public void reverse() {
+    for (int i = start, j = start + size - 1; i < j; i++, j--) {
+      byte t = data[i];
+      data[i] = data[j];
+      data[j] = t;
+    }
+  }
+
+  /**
+   * Returns the backing array. The elements of the list are stored at
+   * array()[offset()] to array()[offset() + size() - 1].
+   * The array is replaced when the list grows, so it must be fetched again
+   * after adding elements.
+   */
+  public byte[] array() {
+    return data;
+  }
+
+  /**
+   * Returns the index of the first element in array().
+   */
+  public int offset() {
+    return start;
+  }
+
+  /**
+   * Reallocates the array so that at least extra more elements fit at the end
+   */
+  private void growTail(int extra) {
+    int newLength = Math.max(start + size + extra,
+			     data.length + Math.max(GROW_SIZE, data.length));
+    byte[] newdata = new byte[newLength];
+    System.arraycopy(data, start, newdata, start, size);
+    data = newdata;
+  }
+
   @Override
   public int size() {
     return size;
@@ -73,9 +176,7 @@ public class ByteArrayList extends AbstractList<Byte> {
   public void add(int index, Byte v) {
     if (start + size >= data.length) {
       // Grow at the end
-      byte[] newdata = new byte[data.length + GROW_SIZE];
-      System.arraycopy(data, 0, newdata, 0, data.length);
-      data = newdata;
+      growTail(1);
     }
     if (index == size) {
       data[start + index] = v;
@@ -83,10 +184,11 @@ public class ByteArrayList extends AbstractList<Byte> {
     } else if (index == 0) {
       if (start == 0) {
 	// Grow at the beginning
-	byte[] newdata = new byte[data.length + GROW_SIZE];
-	System.arraycopy(data, 0, newdata, GROW_SIZE, data.length);
+	int grow = Math.max(GROW_SIZE, data.length);
+	byte[] newdata = new byte[data.length + grow];
+	System.arraycopy(data, 0, newdata, grow, data.length);
 	data = newdata;
-	start = GROW_SIZE;
+	start = grow;
       }
       start--;
       data[start] = v;
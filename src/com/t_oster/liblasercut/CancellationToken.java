@@ -0,0 +1,142 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Requests cooperative cancellation of a running operation.
+ *
+ * Long running code calls throwIfCancelled at convenient points, e.g.
+ * once per row or per emitted line, and stops with a CancellationException
+ * once cancel was called. Code which blocks on IO can register a listener
+ * which unblocks it, e.g. by closing the connection.
+ *
+ * A token can be bound to the current thread (see bind), so that code
+ * deep inside a job, which does not get the token passed, can find it
+ * with current(). LaserCutter.sendJobAsync binds its token this way.
+ */
+public class CancellationToken
+{
+
+  /**
+   * A token which is never cancelled
+   */
+  public static final CancellationToken NONE = new CancellationToken()
+  {
+    @Override
+    public void cancel()
+    {
+      throw new UnsupportedOperationException("This token can not be cancelled");
+    }
+  };
+
+  private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+
+  private volatile boolean cancelled = false;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+  /**
+   * Returns the token bound to the current thread, or NONE
+   */
+  public static CancellationToken current()
+  {
+    CancellationToken token = CURRENT.get();
+    return token == null ? NONE : token;
+  }
+
+  /**
+   * Binds the given token to the current thread and returns the token
+   * which was bound before, so it can be restored in a finally block.
+   * @param token the token, or null to remove the binding
+   */
+  public static CancellationToken bind(CancellationToken token)
+  {
+    CancellationToken previous = CURRENT.get();
+    if (token == null)
+    {
+      CURRENT.remove();
+    }
+    else
+    {
+      CURRENT.set(token);
+    }
+    return previous;
+  }
+
+  /**
+   * Requests cancellation and runs the listeners. Calling it again has no
+   * effect.
+   */
+  public void cancel()
+  {
+    synchronized (this)
+    {
+      if (cancelled)
+      {
+        return;
+      }
+      cancelled = true;
+    }
+    for (Runnable l : listeners)
+    {
+      //whoever removes a listener runs it, so it never runs twice
+      if (listeners.remove(l))
+      {
+        l.run();
+      }
+    }
+  }
+
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  /**
+   * @throws CancellationException if cancel was called
+   */
+  public void throwIfCancelled()
+  {
+    if (cancelled)
+    {
+      throw new CancellationException("Operation cancelled");
+    }
+  }
+
+  /**
+   * Adds a listener which is called on the cancelling thread when cancel
+   * is called. If the token is already cancelled, it is called right away.
+   */
+  public void addCancelListener(Runnable l)
+  {
+    listeners.add(l);
+    if (cancelled && listeners.remove(l))
+    {
+      l.run();
+    }
+  }
+
+  public void removeCancelListener(Runnable l)
+  {
+    listeners.remove(l);
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read only BlackWhiteRaster which combines several rasters placed at
+ * different offsets into one.
+ * The bytes are assembled from the sources on every access, so no merged
+ * bitmap is allocated. A pixel is black if it is black in any source.
+ */
+public class CompositeBlackWhiteRaster extends BlackWhiteRaster
+{
+
+  private final List<BlackWhiteRaster> sources = new ArrayList<BlackWhiteRaster>();
+  private final List<Point> offsets = new ArrayList<Point>();
+
+  public CompositeBlackWhiteRaster(int width, int height)
+  {
+    super(width, height, (byte[][]) null);
+  }
+
+  /**
+   * Places the given raster with its top left corner at x,y
+   */
+  public void add(BlackWhiteRaster source, int x, int y)
+  {
+    if (x < 0 || y < 0 || x + source.getWidth() > getWidth() || y + source.getHeight() > getHeight())
+    {
+      throw new IllegalArgumentException("Raster does not fit into the composite");
+    }
+    sources.add(source);
+    offsets.add(new Point(x, y));
+  }
+
+  public List<BlackWhiteRaster> getSources()
+  {
+    return sources;
+  }
+
+  @Override
+  public boolean requiresSequentialReads()
+  {
+    for (BlackWhiteRaster s : sources)
+    {
+      if (s.requiresSequentialReads())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isBlack(int x, int y)
+  {
+    for (int i = 0; i < sources.size(); i++)
+    {
+      BlackWhiteRaster s = sources.get(i);
+      Point o = offsets.get(i);
+      int sx = x - o.x;
+      int sy = y - o.y;
+      if (sx >= 0 && sy >= 0 && sx < s.getWidth() && sy < s.getHeight() && s.isBlack(sx, sy))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void setBlack(int x, int y, boolean black)
+  {
+    throw new UnsupportedOperationException("CompositeBlackWhiteRaster is read only");
+  }
+
+  @Override
+  public void setByte(int x, int y, byte value)
+  {
+    throw new UnsupportedOperationException("CompositeBlackWhiteRaster is read only");
+  }
+
+  @Override
+  public byte getByte(int x, int y)
+  {
+    int result = 0;
+    for (int i = 0; i < sources.size(); i++)
+    {
+      BlackWhiteRaster s = sources.get(i);
+      Point o = offsets.get(i);
+      int sy = y - o.y;
+      //first source pixel which lands in this byte (may be negative)
+      int first = 8 * x - o.x;
+      if (sy < 0 || sy >= s.getHeight() || first + 8 <= 0 || first >= s.getWidth())
+      {
+        continue;
+      }
+      int bx = first >> 3;
+      int shift = first & 7;
+      int bytes = (s.getWidth() + 7) / 8;
+      int hi = bx >= 0 ? s.getByte(bx, sy) & 0xFF : 0;
+      int lo = shift != 0 && bx + 1 < bytes ? s.getByte(bx + 1, sy) & 0xFF : 0;
+      result |= ((((hi << 8) | lo) << shift) >> 8) & 0xFF;
+    }
+    return (byte) result;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read only GreyscaleRaster which combines several rasters placed at
+ * different offsets into one.
+ * The pixels are looked up in the sources on every access, so no merged
+ * copy of the image is allocated. Where sources overlap the darkest
+ * value wins, pixels which are not covered by any source are white.
+ */
+public class CompositeGreyscaleRaster implements GreyscaleRaster
+{
+
+  private final int width;
+  private final int height;
+  private final List<GreyscaleRaster> sources = new ArrayList<GreyscaleRaster>();
+  private final List<Point> offsets = new ArrayList<Point>();
+
+  public CompositeGreyscaleRaster(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Places the given raster with its top left corner at x,y
+   */
+  public void add(GreyscaleRaster source, int x, int y)
+  {
+    if (x < 0 || y < 0 || x + source.getWidth() > width || y + source.getHeight() > height)
+    {
+      throw new IllegalArgumentException("Raster does not fit into the composite");
+    }
+    sources.add(source);
+    offsets.add(new Point(x, y));
+  }
+
+  public List<GreyscaleRaster> getSources()
+  {
+    return sources;
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    for (GreyscaleRaster s : sources)
+    {
+      if (s.requiresSequentialReads())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    int result = 255;
+    for (int i = 0; i < sources.size(); i++)
+    {
+      GreyscaleRaster s = sources.get(i);
+      Point o = offsets.get(i);
+      int sx = x - o.x;
+      int sy = y - o.y;
+      if (sx >= 0 && sy >= 0 && sx < s.getWidth() && sy < s.getHeight())
+      {
+        result = Math.min(result, s.getGreyScale(sx, sy));
+      }
+    }
+    return result;
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    throw new UnsupportedOperationException("CompositeGreyscaleRaster is read only");
+  }
+}
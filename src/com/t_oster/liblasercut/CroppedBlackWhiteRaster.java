@@ -0,0 +1,108 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A read only rectangular window of another BlackWhiteRaster.
+ * Pixels and bytes are read from the source on every access, so no copy
+ * of the window is allocated.
+ */
+public class CroppedBlackWhiteRaster extends BlackWhiteRaster
+{
+
+  private final BlackWhiteRaster source;
+  private final int offsetX;
+  private final int offsetY;
+
+  /**
+   * @param source the raster to show a window of
+   * @param x left edge of the window in the source
+   * @param y top edge of the window in the source
+   * @param width width of the window
+   * @param height height of the window
+   */
+  public CroppedBlackWhiteRaster(BlackWhiteRaster source, int x, int y, int width, int height)
+  {
+    super(width, height, (byte[][]) null);
+    if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > source.getWidth() || y + height > source.getHeight())
+    {
+      throw new IllegalArgumentException("Window does not fit into the raster");
+    }
+    this.source = source;
+    this.offsetX = x;
+    this.offsetY = y;
+  }
+
+  public BlackWhiteRaster getSource()
+  {
+    return source;
+  }
+
+  @Override
+  public boolean requiresSequentialReads()
+  {
+    return source.requiresSequentialReads();
+  }
+
+  @Override
+  public boolean isBlack(int x, int y)
+  {
+    return source.isBlack(offsetX + x, offsetY + y);
+  }
+
+  @Override
+  public void setBlack(int x, int y, boolean black)
+  {
+    throw new UnsupportedOperationException("CroppedBlackWhiteRaster is read only");
+  }
+
+  @Override
+  public void setByte(int x, int y, byte value)
+  {
+    throw new UnsupportedOperationException("CroppedBlackWhiteRaster is read only");
+  }
+
+  @Override
+  public byte getByte(int x, int y)
+  {
+    int sy = offsetY + y;
+    //first source pixel of this byte
+    int first = offsetX + 8 * x;
+    int bx = first >> 3;
+    int shift = first & 7;
+    int result;
+    if (shift == 0)
+    {
+      result = source.getByte(bx, sy) & 0xFF;
+    }
+    else
+    {
+      int hi = source.getByte(bx, sy) & 0xFF;
+      int lo = bx + 1 < (source.getWidth() + 7) / 8 ? source.getByte(bx + 1, sy) & 0xFF : 0;
+      result = (((hi << 8) | lo) << shift) >> 8;
+    }
+    //clear the pixels right of the window
+    int remaining = getWidth() - 8 * x;
+    if (remaining < 8)
+    {
+      result &= 0xFF00 >> remaining;
+    }
+    return (byte) result;
+  }
+}
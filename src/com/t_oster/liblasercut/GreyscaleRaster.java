@@ -40,4 +40,12 @@ public interface GreyscaleRaster
   public void setGreyScale(int x, int y, int grey);
 
   public int getHeight();
+
+  /**
+   * Returns true if the pixels are computed row by row from the top, so
+   * reading rows out of order or more than once is much more expensive
+   * than reading them from top to bottom once. Rasters which show another
+   * raster return the value of their source.
+   */
+  public boolean requiresSequentialReads();
 }
@@ -22,12 +22,16 @@
  */
 package com.t_oster.liblasercut;
 
-import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 /**
  *
@@ -82,6 +86,115 @@ public abstract class LaserCutter implements Cloneable, Customizable {
      */
     public abstract void sendJob(LaserJob job, ProgressListener pl, List<String> warnings) throws IllegalJobException, Exception;
 
+    /**
+     * Same as sendJobAsync(job, pl, warnings, token, executor), but runs
+     * the job on a new thread
+     */
+    public CompletableFuture<Void> sendJobAsync(LaserJob job, ProgressListener pl, List<String> warnings, CancellationToken token)
+    {
+      return sendJobAsync(job, pl, warnings, token, new Executor()
+      {
+        public void execute(Runnable command)
+        {
+          new Thread(command, "sendJob " + getModelName()).start();
+        }
+      });
+    }
+
+    /**
+     * Runs sendJob(job, pl, warnings) on the given executor.
+     *
+     * The token is bound to the sending thread (see CancellationToken.bind),
+     * so dithering, vector optimization and the drivers stop at their next
+     * check once it is cancelled. Progress reports of the driver are checks
+     * as well. Cancelling the returned future cancels the token.
+     * A cancelled job ends with a CancellationException thrown inside
+     * sendJob. GenericGcodeDriver and EpilogCutter close their connection
+     * then. Other drivers only do so if they clean up on exceptions.
+     * @param token the token which cancels the job. Its cancel method is
+     * called when the future is cancelled. If it is null or
+     * CancellationToken.NONE, a new token is used, so the future can still
+     * be cancelled.
+     * @return a future which completes when the job has been sent, or
+     * completes exceptionally with the exception thrown by sendJob. It is
+     * cancelled if the job has been cancelled.
+     */
+    public CompletableFuture<Void> sendJobAsync(final LaserJob job, final ProgressListener pl, final List<String> warnings, CancellationToken cancellationToken, Executor executor)
+    {
+      final CancellationToken token = cancellationToken == null || cancellationToken == CancellationToken.NONE
+        ? new CancellationToken() : cancellationToken;
+      final CompletableFuture<Void> future = new CompletableFuture<Void>();
+      future.whenComplete(new BiConsumer<Void, Throwable>()
+      {
+        public void accept(Void result, Throwable error)
+        {
+          if (future.isCancelled())
+          {
+            token.cancel();
+          }
+        }
+      });
+      executor.execute(new Runnable()
+      {
+        public void run()
+        {
+          CancellationToken previous = CancellationToken.bind(token);
+          try
+          {
+            token.throwIfCancelled();
+            sendJob(job, new CancellingProgressListener(pl, token), warnings == null ? new LinkedList<String>() : warnings);
+            future.complete(null);
+          }
+          catch (CancellationException e)
+          {
+            future.cancel(false);
+          }
+          catch (Throwable e)
+          {
+            future.completeExceptionally(e);
+          }
+          finally
+          {
+            CancellationToken.bind(previous);
+          }
+        }
+      });
+      return future;
+    }
+
+    /**
+     * Forwards to another listener and stops the job if it is cancelled
+     */
+    private static class CancellingProgressListener implements ProgressListener
+    {
+      private final ProgressListener pl;
+      private final CancellationToken token;
+
+      CancellingProgressListener(ProgressListener pl, CancellationToken token)
+      {
+        this.pl = pl;
+        this.token = token;
+      }
+
+      public void progressChanged(Object source, int percent)
+      {
+        token.throwIfCancelled();
+        if (pl != null)
+        {
+          pl.progressChanged(source, percent);
+        }
+      }
+
+      public void taskChanged(Object source, String taskName)
+      {
+        token.throwIfCancelled();
+        if (pl != null)
+        {
+          pl.taskChanged(source, taskName);
+        }
+      }
+    }
+
     public void saveJob(PrintStream fileOutputStream, LaserJob job,ProgressListener pl) throws UnsupportedOperationException, IllegalJobException, Exception {
         System.err.println("Your driver does not implement saveJob(LaserJob job)");
         throw new UnsupportedOperationException("Your driver does not implement saveJob(LaserJob job)");
@@ -189,6 +302,9 @@ public abstract class LaserCutter implements Cloneable, Customizable {
      * Converts a raster image (B&W or greyscale) into a series of vector
      * instructions suitable for printing. Lets non-raster-native cutters
      * emulate this functionality using gcode.
+     * Drivers which can generate their output line by line should rather
+     * implement a ScanlineEmitter and use RasterizableJobPart.feedScanlines
+     * directly, which avoids building the intermediate VectorPart.
      * @param rp the raster job to convert
      * @param resolution resolution to output job at
      * @param bidirectional cut in both directions
@@ -196,40 +312,37 @@ public abstract class LaserCutter implements Cloneable, Customizable {
      */
     protected VectorPart convertRasterizableToVectorPart(RasterizableJobPart rp, double resolution, boolean bidirectional)
     {
-      VectorPart result = new VectorPart(rp.getLaserProperty(), resolution);
-      for (int y = 0; y < rp.getRasterHeight(); y++)
+      final VectorPart result = new VectorPart(rp.getLaserProperty(), resolution);
+      final CancellationToken token = CancellationToken.current();
+      try
       {
-        if (rp.lineIsBlank(y) == false)
+        rp.feedScanlines(new ScanlineEmitter()
         {
-          Point lineStart = rp.getStartPosition(y);
-
-          //move to prestart
-          int x = rp.firstNonWhitePixel(y);
-          int overscan = Math.round((float)Util.mm2px(this.getRasterPadding() * (rp.cutDirectionleftToRight ? 1 : -1), resolution));
-
-          result.moveto(lineStart.x + x + rp.cutCompensation() - overscan, lineStart.y);
-
-          //move to the first point of the scanline
-          result.setProperty(rp.getPowerSpeedFocusPropertyForColor(255));
-          result.lineto(lineStart.x + x + rp.cutCompensation(), lineStart.y);
-
-          while(!rp.hasFinishedCuttingLine(x, y))
+          public void startLine(int x, int y)
           {
-            result.setProperty(rp.getPowerSpeedFocusPropertyForPixel(x, y));
-            x = rp.nextColorChange(x, y);
-            result.lineto(lineStart.x + x + rp.cutCompensation(), lineStart.y);
+            token.throwIfCancelled();
+            result.moveto(x, y);
           }
 
-          // move to post-end
-          result.setProperty(rp.getPowerSpeedFocusPropertyForColor(255));
-          result.lineto(lineStart.x + x + rp.cutCompensation() + overscan, lineStart.y);
+          public void run(FloatPowerSpeedFocusProperty property, int x, int y)
+          {
+            result.setProperty(property);
+            result.lineto(x, y);
+          }
 
-          if (bidirectional) rp.toggleRasteringCutDirection();
-        }
+          public void endLine()
+          {
+          }
+        }, this.getRasterPadding(), resolution, bidirectional);
+      }
+      catch (IOException e)
+      {
+        //can not happen, the VectorPart does not do any IO
+        throw new RuntimeException(e);
       }
       return result;
     }
-    
+
     /**
      * Intented for use in the clone mehtod. Copies all properties
      * of that to this
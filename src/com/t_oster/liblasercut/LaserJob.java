@@ -22,6 +22,7 @@
  */
 package com.t_oster.liblasercut;
 
+import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
 import java.util.LinkedList;
 import java.util.List;
@@ -141,4 +142,106 @@ public class LaserJob
       startY = 0;
     }
   }
+
+  /**
+   * Combines consecutive raster parts which have the same type, resolution,
+   * laser property and raster direction and which overlap or touch
+   * vertically into one part. This way the rows shared by several images
+   * are engraved in one sweep instead of one pass per image.
+   * The merged parts read lazily from the original images, so no additional
+   * bitmap is allocated.
+   * @return the number of parts which have been removed by merging
+   */
+  public int mergeRasterParts()
+  {
+    List<JobPart> result = new LinkedList<JobPart>();
+    List<RasterizableJobPart> group = new LinkedList<RasterizableJobPart>();
+    for (JobPart p : parts)
+    {
+      if (!group.isEmpty() && !canMergeInto(group, p))
+      {
+        result.add(merge(group));
+        group.clear();
+      }
+      if (p instanceof RasterPart || p instanceof Raster3dPart)
+      {
+        group.add((RasterizableJobPart) p);
+      }
+      else
+      {
+        result.add(p);
+      }
+    }
+    if (!group.isEmpty())
+    {
+      result.add(merge(group));
+    }
+    int removed = parts.size() - result.size();
+    parts = result;
+    return removed;
+  }
+
+  private boolean canMergeInto(List<RasterizableJobPart> group, JobPart p)
+  {
+    RasterizableJobPart first = group.get(0);
+    if (p.getClass() != first.getClass() || p.getDPI() != first.getDPI())
+    {
+      return false;
+    }
+    RasterizableJobPart rp = (RasterizableJobPart) p;
+    if (rp.cutDirectionleftToRight != first.cutDirectionleftToRight
+      || !rp.getLaserProperty().equals(first.getLaserProperty()))
+    {
+      return false;
+    }
+    int minY = Integer.MAX_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (RasterizableJobPart g : group)
+    {
+      minY = Math.min(minY, g.getMinY());
+      maxY = Math.max(maxY, g.getMaxY());
+    }
+    return rp.getMinY() <= maxY && rp.getMaxY() >= minY;
+  }
+
+  private JobPart merge(List<RasterizableJobPart> group)
+  {
+    RasterizableJobPart first = group.get(0);
+    if (group.size() == 1)
+    {
+      return first;
+    }
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (RasterizableJobPart g : group)
+    {
+      minX = Math.min(minX, g.start.x);
+      minY = Math.min(minY, g.start.y);
+      maxX = Math.max(maxX, g.start.x + g.getRasterWidth());
+      maxY = Math.max(maxY, g.start.y + g.getRasterHeight());
+    }
+    RasterizableJobPart merged;
+    if (first instanceof RasterPart)
+    {
+      CompositeBlackWhiteRaster image = new CompositeBlackWhiteRaster(maxX - minX, maxY - minY);
+      for (RasterizableJobPart g : group)
+      {
+        image.add((BlackWhiteRaster) g.getImage(), g.start.x - minX, g.start.y - minY);
+      }
+      merged = new RasterPart(image, first.getLaserProperty(), new Point(minX, minY), first.getDPI());
+    }
+    else
+    {
+      CompositeGreyscaleRaster image = new CompositeGreyscaleRaster(maxX - minX, maxY - minY);
+      for (RasterizableJobPart g : group)
+      {
+        image.add(g.getImage(), g.start.x - minX, g.start.y - minY);
+      }
+      merged = new Raster3dPart(image, first.getLaserProperty(), new Point(minX, minY), first.getDPI());
+    }
+    merged.cutDirectionleftToRight = first.cutDirectionleftToRight;
+    return merged;
+  }
 }
@@ -0,0 +1,150 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.DitheringAlgorithm;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A BlackWhiteRaster which stores its pixels in a memory mapped temporary
+ * file instead of the java heap.
+ * The bits are stored row by row (8 pixels per byte, MSB is the left-most
+ * pixel) in tiles (bands of whole rows), and only a bounded number of
+ * tiles is kept mapped (see MappedTileStore). The pages are backed by the
+ * file, so the operating system can page them out, which heap memory
+ * of the same size could not.
+ *
+ * Call close() when the raster is not needed anymore to release the
+ * backing file.
+ */
+public class MappedBlackWhiteRaster extends BlackWhiteRaster
+{
+
+  private MappedTileStore store;
+
+  /**
+   * Creates a new white raster of the given size in the default temporary
+   * directory
+   */
+  public MappedBlackWhiteRaster(int width, int height) throws IOException
+  {
+    this(width, height, null, MappedTileStore.DEFAULT_TILE_SIZE, MappedTileStore.DEFAULT_MAX_RESIDENT_TILES);
+  }
+
+  /**
+   * Creates a new white raster of the given size
+   * @param width
+   * @param height
+   * @param directory directory for the backing file or null for the
+   * default temporary directory
+   * @param tileSize size of one mapped tile in bytes
+   * @param maxResidentTiles maximum number of mapped tiles kept referenced
+   * @throws IOException
+   */
+  public MappedBlackWhiteRaster(int width, int height, File directory, int tileSize, int maxResidentTiles) throws IOException
+  {
+    super(width, height, (byte[][]) null);
+    this.store = new MappedTileStore(Math.max(1, (width + 7) / 8), height, tileSize, maxResidentTiles, directory);
+  }
+
+  /**
+   * Dithers the given raster directly into a new mapped raster
+   */
+  public MappedBlackWhiteRaster(GreyscaleRaster src, DitheringAlgorithm alg, ProgressListener listener) throws IOException
+  {
+    this(src.getWidth(), src.getHeight());
+    if (listener != null)
+    {
+      this.addProgressListener(listener);
+      alg.addProgressListener(listener);
+    }
+    alg.ditherDirect(src, this);
+  }
+
+  public MappedBlackWhiteRaster(GreyscaleRaster src, DitherAlgorithm dither_algorithm) throws IOException
+  {
+    this(src, BlackWhiteRaster.getDitheringAlgorithm(dither_algorithm), null);
+  }
+
+  @Override
+  public boolean isBlack(int x, int y)
+  {
+    return (store.get(y, x / 8) & (0x80 >> (x % 8))) != 0;
+  }
+
+  @Override
+  public void setBlack(int x, int y, boolean black)
+  {
+    int bx = x / 8;
+    int mask = 0x80 >> (x % 8);
+    int b = store.get(y, bx);
+    store.set(y, bx, (byte) (black ? b | mask : b & ~mask));
+  }
+
+  @Override
+  public byte getByte(int x, int y)
+  {
+    return store.get(y, x);
+  }
+
+  @Override
+  public void setByte(int x, int y, byte value)
+  {
+    store.set(y, x, value);
+  }
+
+  /**
+   * Copies one packed row (8 pixels per byte) into the given array.
+   * This is the preferred way of streaming the raster to a driver.
+   * @param y the row
+   * @param result array of at least (getWidth()+7)/8 bytes
+   */
+  public void getRow(int y, byte[] result)
+  {
+    store.getRow(y, result, 0);
+  }
+
+  /**
+   * Overwrites one packed row (8 pixels per byte)
+   * @param y the row
+   * @param values array of at least (getWidth()+7)/8 bytes
+   */
+  public void setRow(int y, byte[] values)
+  {
+    store.setRow(y, values, 0);
+  }
+
+  /**
+   * Returns the number of mapped tiles kept by the raster. Evicted tiles
+   * stay mapped until they are garbage collected.
+   */
+  public int getResidentTileCount()
+  {
+    return store.getResidentTileCount();
+  }
+
+  /**
+   * Releases the backing file. The raster must not be used afterwards.
+   */
+  public void close() throws IOException
+  {
+    store.close();
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A GreyscaleRaster with one byte per pixel which is stored in a
+ * memory mapped temporary file instead of the java heap.
+ * It is intended for huge images (e.g. full bed photo engravings at high
+ * resolution) which would not fit into the heap as BufferedImage.
+ *
+ * Only a bounded number of tiles (bands of whole rows) is kept mapped
+ * (see MappedTileStore). The pages are backed by the file, so the
+ * operating system can page them out, which heap memory of the same size
+ * could not.
+ * Dithering in place is supported via DitheringAlgorithm.ditherDirect.
+ *
+ * Call close() when the raster is not needed anymore to release the
+ * backing file.
+ */
+public class MappedGreyscaleRaster implements GreyscaleRaster
+{
+
+  private int width;
+  private int height;
+  private MappedTileStore store;
+  private byte[] rowBuffer;
+
+  /**
+   * Creates a new white raster of the given size in the default temporary
+   * directory
+   */
+  public MappedGreyscaleRaster(int width, int height) throws IOException
+  {
+    this(width, height, null, MappedTileStore.DEFAULT_TILE_SIZE, MappedTileStore.DEFAULT_MAX_RESIDENT_TILES);
+  }
+
+  /**
+   * Creates a new white raster of the given size
+   * @param width
+   * @param height
+   * @param directory directory for the backing file or null for the
+   * default temporary directory
+   * @param tileSize size of one mapped tile in bytes
+   * @param maxResidentTiles maximum number of mapped tiles kept referenced
+   * @throws IOException
+   */
+  public MappedGreyscaleRaster(int width, int height, File directory, int tileSize, int maxResidentTiles) throws IOException
+  {
+    this.width = width;
+    this.height = height;
+    this.store = new MappedTileStore(Math.max(1, width), height, tileSize, maxResidentTiles, directory);
+    this.rowBuffer = new byte[Math.max(1, width)];
+    //the file is initialized with zeroes, but we use them as inverted
+    //values so a new raster is white
+  }
+
+  /**
+   * Creates a copy of the given raster, e.g. to dither it in place
+   * without touching the original
+   */
+  public MappedGreyscaleRaster(GreyscaleRaster src) throws IOException
+  {
+    this(src.getWidth(), src.getHeight());
+    byte[] row = rowBuffer;
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        row[x] = (byte) (255 - src.getGreyScale(x, y));
+      }
+      store.setRow(y, row, 0);
+    }
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return 255 - (store.get(y, x) & 0xFF);
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    store.set(y, x, (byte) (255 - grey));
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    return false;
+  }
+
+  /**
+   * Copies the grey values of one row into the given array
+   * @param y the row
+   * @param result array of at least getWidth() entries
+   */
+  public void getRow(int y, int[] result)
+  {
+    byte[] row = rowBuffer;
+    store.getRow(y, row, 0);
+    for (int x = 0; x < width; x++)
+    {
+      result[x] = 255 - (row[x] & 0xFF);
+    }
+  }
+
+  /**
+   * Sets the grey values of one row
+   * @param y the row
+   * @param values array of at least getWidth() entries
+   */
+  public void setRow(int y, int[] values)
+  {
+    byte[] row = rowBuffer;
+    for (int x = 0; x < width; x++)
+    {
+      row[x] = (byte) (255 - values[x]);
+    }
+    store.setRow(y, row, 0);
+  }
+
+  /**
+   * Returns the number of mapped tiles kept by the raster. Evicted tiles
+   * stay mapped until they are garbage collected.
+   */
+  public int getResidentTileCount()
+  {
+    return store.getResidentTileCount();
+  }
+
+  /**
+   * Releases the backing file. The raster must not be used afterwards.
+   */
+  public void close() throws IOException
+  {
+    store.close();
+  }
+}
@@ -0,0 +1,219 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Row oriented byte storage backed by a temporary file which is mapped
+ * into memory in tiles of whole rows.
+ * Only the most recently used tiles are referenced by the store. Java can
+ * not unmap a MappedByteBuffer explicitly, so an evicted tile stays mapped
+ * until the garbage collector frees its buffer. maxResidentTiles therefore
+ * limits the mappings in use, not the resident memory. The mapped pages
+ * are backed by the file, so the operating system can reclaim them under
+ * memory pressure, unlike heap memory.
+ *
+ * This class is not thread safe.
+ */
+class MappedTileStore
+{
+
+  /**
+   * Default size of one mapped tile in bytes
+   */
+  static final int DEFAULT_TILE_SIZE = 4 * 1024 * 1024;
+  /**
+   * Default number of tiles which are kept mapped at the same time
+   */
+  static final int DEFAULT_MAX_RESIDENT_TILES = 16;
+
+  private final int rowBytes;
+  private final int rows;
+  private final int rowsPerTile;
+  private File file;
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private final Map<Integer, MappedByteBuffer> tiles;
+  // shortcut for the common case of consecutive accesses to the same tile
+  private int lastTileIndex = -1;
+  private MappedByteBuffer lastTile = null;
+
+  /**
+   * Creates a new zero filled store
+   * @param rowBytes number of bytes per row
+   * @param rows number of rows
+   * @param tileSize maximum size of one mapped tile in bytes. A tile always
+   * contains at least one row.
+   * @param maxResidentTiles number of mapped tiles the store keeps
+   * referenced
+   * @param directory directory for the backing file or null for the
+   * default temporary directory
+   * @throws IOException if the backing file can not be created
+   */
+  MappedTileStore(int rowBytes, int rows, int tileSize, final int maxResidentTiles, File directory) throws IOException
+  {
+    if (rowBytes <= 0 || rows < 0)
+    {
+      throw new IllegalArgumentException("Invalid raster size "+rowBytes+"x"+rows);
+    }
+    if (maxResidentTiles < 1)
+    {
+      throw new IllegalArgumentException("At least one tile has to be resident");
+    }
+    this.rowBytes = rowBytes;
+    this.rows = rows;
+    this.rowsPerTile = Math.max(1, tileSize / rowBytes);
+    this.tiles = new LinkedHashMap<Integer, MappedByteBuffer>(maxResidentTiles * 2, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest)
+      {
+        return size() > maxResidentTiles;
+      }
+    };
+    this.file = File.createTempFile("liblasercut-raster", ".tmp", directory);
+    this.file.deleteOnExit();
+    this.raf = new RandomAccessFile(file, "rw");
+    //the file is extended sparse and reads as zeroes
+    this.raf.setLength((long) rowBytes * rows);
+    this.channel = raf.getChannel();
+  }
+
+  int getRowBytes()
+  {
+    return rowBytes;
+  }
+
+  int getRows()
+  {
+    return rows;
+  }
+
+  int getRowsPerTile()
+  {
+    return rowsPerTile;
+  }
+
+  /**
+   * Returns the number of mapped tiles referenced by the store. Evicted
+   * tiles which have not been garbage collected yet are not counted.
+   */
+  int getResidentTileCount()
+  {
+    return tiles.size();
+  }
+
+  private MappedByteBuffer tileForRow(int row)
+  {
+    int index = row / rowsPerTile;
+    if (index == lastTileIndex)
+    {
+      return lastTile;
+    }
+    MappedByteBuffer tile = tiles.get(index);
+    if (tile == null)
+    {
+      if (channel == null)
+      {
+        throw new IllegalStateException("Raster storage has already been closed");
+      }
+      long offset = (long) index * rowsPerTile * rowBytes;
+      int size = Math.min(rowsPerTile, rows - index * rowsPerTile) * rowBytes;
+      try
+      {
+        tile = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+      }
+      catch (IOException e)
+      {
+        throw new RuntimeException("Could not map raster tile "+index+": "+e.getMessage(), e);
+      }
+      tiles.put(index, tile);
+    }
+    lastTileIndex = index;
+    lastTile = tile;
+    return tile;
+  }
+
+  private int offsetInTile(int row, int col)
+  {
+    return (row % rowsPerTile) * rowBytes + col;
+  }
+
+  byte get(int row, int col)
+  {
+    return tileForRow(row).get(offsetInTile(row, col));
+  }
+
+  void set(int row, int col, byte value)
+  {
+    tileForRow(row).put(offsetInTile(row, col), value);
+  }
+
+  /**
+   * Copies the given row into dst, starting at offset
+   */
+  void getRow(int row, byte[] dst, int offset)
+  {
+    ByteBuffer tile = tileForRow(row).duplicate();
+    tile.position(offsetInTile(row, 0));
+    tile.get(dst, offset, rowBytes);
+  }
+
+  /**
+   * Overwrites the given row with the data from src, starting at offset
+   */
+  void setRow(int row, byte[] src, int offset)
+  {
+    ByteBuffer tile = tileForRow(row).duplicate();
+    tile.position(offsetInTile(row, 0));
+    tile.put(src, offset, rowBytes);
+  }
+
+  /**
+   * Unmaps all tiles and deletes the backing file.
+   * The mappings themselves are released by the garbage collector, since
+   * there is no portable way to unmap a MappedByteBuffer.
+   */
+  void close() throws IOException
+  {
+    tiles.clear();
+    lastTile = null;
+    lastTileIndex = -1;
+    if (channel != null)
+    {
+      channel.close();
+      raf.close();
+      channel = null;
+      raf = null;
+      if (!file.delete())
+      {
+        //still mapped on some platforms, will be deleted on exit
+        file.deleteOnExit();
+      }
+    }
+  }
+}
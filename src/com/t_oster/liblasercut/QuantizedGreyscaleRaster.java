@@ -0,0 +1,192 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A read only view of a GreyscaleRaster which reduces the image to a
+ * given number of evenly spaced grey levels and merges neighbouring pixels
+ * of similar grey into one run of the same value.
+ * This limits the number of power changes per line, so drivers which emit
+ * one command per change (like the G-code drivers) produce much less
+ * output for photographic images.
+ *
+ * Optionally the quantization error is diffused along each row, which
+ * keeps the average tone of an area. White pixels always stay white and
+ * neither receive diffused error nor are merged with grey ones, so blank
+ * areas are still skipped.
+ *
+ * Rows are computed on first access of a pixel, so the view should be
+ * read row by row.
+ */
+public class QuantizedGreyscaleRaster implements GreyscaleRaster
+{
+
+  private static class Row
+  {
+    final int y;
+    final int[] values;
+
+    Row(int y, int[] values)
+    {
+      this.y = y;
+      this.values = values;
+    }
+  }
+
+  private final GreyscaleRaster source;
+  private final int levels;
+  private final boolean diffuseError;
+  private final int tolerance;
+  // the last computed row of each reading thread
+  private final ThreadLocal<Row> cache = new ThreadLocal<Row>();
+
+  /**
+   * @param source the raster to quantize
+   * @param levels number of grey levels including black and white (2-256)
+   * @param diffuseError if true, the quantization error of each pixel is
+   * added to its right neighbour
+   * @param tolerance neighbouring pixels whose levels differ by at most this
+   * many grey values are merged into one run with their average level.
+   * 0 disables merging
+   */
+  public QuantizedGreyscaleRaster(GreyscaleRaster source, int levels, boolean diffuseError, int tolerance)
+  {
+    if (levels < 2 || levels > 256)
+    {
+      throw new IllegalArgumentException("The number of levels has to be between 2 and 256");
+    }
+    this.source = source;
+    this.levels = levels;
+    this.diffuseError = diffuseError;
+    this.tolerance = Math.max(0, tolerance);
+  }
+
+  public int getLevels()
+  {
+    return levels;
+  }
+
+  public boolean isDiffuseError()
+  {
+    return diffuseError;
+  }
+
+  public int getTolerance()
+  {
+    return tolerance;
+  }
+
+  /**
+   * Returns the nearest of the available grey levels
+   */
+  private int quantize(double grey)
+  {
+    double step = 255.0 / (levels - 1);
+    int level = (int) Math.round(Math.max(0, Math.min(255, grey)) / step);
+    return (int) Math.round(level * step);
+  }
+
+  private int[] computeRow(int y)
+  {
+    int width = source.getWidth();
+    int[] row = new int[width];
+    double error = 0;
+    for (int x = 0; x < width; x++)
+    {
+      int grey = source.getGreyScale(x, y);
+      if (grey >= 255)
+      {
+        row[x] = 255;
+        error = 0;
+        continue;
+      }
+      double wanted = diffuseError ? grey + error : grey;
+      int q = quantize(wanted);
+      row[x] = q;
+      error = wanted - q;
+    }
+    if (tolerance > 0)
+    {
+      mergeRuns(row);
+    }
+    return row;
+  }
+
+  private void mergeRuns(int[] row)
+  {
+    int start = 0;
+    while (start < row.length)
+    {
+      int reference = row[start];
+      int end = start + 1;
+      long sum = reference;
+      while (end < row.length && reference != 255 && row[end] != 255
+        && Math.abs(row[end] - reference) <= tolerance)
+      {
+        sum += row[end];
+        end++;
+      }
+      if (end - start > 1)
+      {
+        int value = quantize((double) sum / (end - start));
+        for (int x = start; x < end; x++)
+        {
+          row[x] = value;
+        }
+      }
+      start = end;
+    }
+  }
+
+  private int[] getRow(int y)
+  {
+    Row r = cache.get();
+    if (r == null || r.y != y)
+    {
+      r = new Row(y, computeRow(y));
+      cache.set(r);
+    }
+    return r.values;
+  }
+
+  public int getWidth()
+  {
+    return source.getWidth();
+  }
+
+  public int getHeight()
+  {
+    return source.getHeight();
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return getRow(y)[x];
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    throw new UnsupportedOperationException("QuantizedGreyscaleRaster is read only");
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    return source.requiresSequentialReads();
+  }
+}
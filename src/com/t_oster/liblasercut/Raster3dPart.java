@@ -30,6 +30,15 @@ public class Raster3dPart extends RasterizableJobPart
 
   private LaserProperty property = null;
   private double resolution = 500;
+  /**
+   * The property for every grey level, computed on first use
+   */
+  private FloatPowerSpeedFocusProperty[] propertyTable = null;
+  /**
+   * Copy of the property the table was computed from. If the property
+   * is changed afterwards, the table is recomputed.
+   */
+  private LaserProperty propertyTableBase = null;
 
   public Raster3dPart(GreyscaleRaster image, LaserProperty laserProperty, Point offset, double resolution)
   {
@@ -69,6 +78,28 @@ public class Raster3dPart extends RasterizableJobPart
     return start.y + image.getHeight();
   }
 
+  /**
+   * Returns a copy of this part which engraves the image reduced to the
+   * given number of grey levels, see QuantizedGreyscaleRaster.
+   * The image is not copied.
+   * @param levels number of grey levels including black and white
+   * @param diffuseError whether to diffuse the quantization error along
+   * the scan direction
+   * @param tolerance maximum difference of grey values which are merged
+   * into one run
+   * @param alongColumns quantize along the columns instead of the rows,
+   * for parts which are rastered along the Y axis
+   */
+  public Raster3dPart quantized(int levels, boolean diffuseError, int tolerance, boolean alongColumns)
+  {
+    GreyscaleRaster q = alongColumns
+      ? new TransposedGreyscaleRaster(new QuantizedGreyscaleRaster(new TransposedGreyscaleRaster(image), levels, diffuseError, tolerance))
+      : new QuantizedGreyscaleRaster(image, levels, diffuseError, tolerance);
+    Raster3dPart result = new Raster3dPart(q, property, start, resolution);
+    result.cutDirectionleftToRight = cutDirectionleftToRight;
+    return result;
+  }
+
   /**
    * Returns the upper left point of the given raster
    *
@@ -107,7 +138,13 @@ public class Raster3dPart extends RasterizableJobPart
   public List<Byte> getRasterLine(int line, List<Byte> result)
   {
     if (result instanceof ByteArrayList) {
-	((ByteArrayList)result).clear(image.getWidth());
+	ByteArrayList list = (ByteArrayList) result;
+	list.clear(image.getWidth());
+	for (int x = 0; x < image.getWidth(); x++)
+	{
+	  list.addByte((byte) image.getGreyScale(x, line));
+	}
+	return result;
     } else {
 	result.clear();
     }
@@ -144,7 +181,13 @@ public class Raster3dPart extends RasterizableJobPart
   public void getInvertedRasterLine(int line, List<Byte> result)
   {
     if (result instanceof ByteArrayList) {
-	((ByteArrayList)result).clear(image.getWidth());
+	ByteArrayList list = (ByteArrayList) result;
+	list.clear(image.getWidth());
+	for (int x = 0; x < image.getWidth(); x++)
+	{
+	  list.addByte((byte) (255 - image.getGreyScale(x, line)));
+	}
+	return;
     } else {
 	result.clear();
     }
@@ -155,8 +198,36 @@ public class Raster3dPart extends RasterizableJobPart
     }
   }
 
+  /**
+   * Returns the property for the given color from a table which is computed
+   * once per base property. Grey levels which result in the same power
+   * share the same instance, so the returned property must not be modified.
+   */
   @Override
   public FloatPowerSpeedFocusProperty getPowerSpeedFocusPropertyForColor(int color)
+  {
+    if (color < 0 || color > 255)
+    {
+      return computePropertyForColor(color);
+    }
+    if (propertyTable == null || !property.equals(propertyTableBase))
+    {
+      FloatPowerSpeedFocusProperty[] table = new FloatPowerSpeedFocusProperty[256];
+      for (int c = 0; c < table.length; c++)
+      {
+        table[c] = computePropertyForColor(c);
+        if (c > 0 && table[c].equals(table[c - 1]))
+        {
+          table[c] = table[c - 1];
+        }
+      }
+      propertyTable = table;
+      propertyTableBase = property.clone();
+    }
+    return propertyTable[color];
+  }
+
+  private FloatPowerSpeedFocusProperty computePropertyForColor(int color)
   {
     FloatPowerSpeedFocusProperty power = (FloatPowerSpeedFocusProperty) getLaserProperty().clone();
     // convert 0-255 into <max power>-0. i.e....
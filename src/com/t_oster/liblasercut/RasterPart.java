@@ -112,17 +112,112 @@ public class RasterPart extends RasterizableJobPart
    */
   public void getRasterLine(int line, List<Byte> result)
   {
+    int bytes = (image.getWidth() + 7) / 8;
     if (result instanceof ByteArrayList) {
-	((ByteArrayList)result).clear((image.getWidth() + 7) / 8);
+	ByteArrayList list = (ByteArrayList) result;
+	list.clear(bytes);
+	if (image instanceof SparseBlackWhiteRaster)
+	{
+	  byte[] row = new byte[bytes];
+	  ((SparseBlackWhiteRaster) image).getRow(line, row);
+	  list.addAll(row, 0, bytes);
+	  return;
+	}
+	for (int x = 0; x < bytes; x++)
+	{
+	  list.addByte(((BlackWhiteRaster) image).getByte(x, line));
+	}
+	return;
     } else {
 	result.clear();
     }
-    for (int x = 0; x < (image.getWidth() + 7) / 8; x++)
+    for (int x = 0; x < bytes; x++)
     {
       result.add(((BlackWhiteRaster) image).getByte(x, line));
     }
   }
 
+  /**
+   * Uses the blank-row bitmap if the raster is a SparseBlackWhiteRaster and
+   * checks whole bytes instead of single pixels otherwise
+   */
+  @Override
+  public boolean lineIsBlank(int y)
+  {
+    if (image instanceof SparseBlackWhiteRaster)
+    {
+      return ((SparseBlackWhiteRaster) image).isLineBlank(y);
+    }
+    BlackWhiteRaster bw = (BlackWhiteRaster) image;
+    for (int x = 0; x < (bw.getWidth() + 7) / 8; x++)
+    {
+      if (bw.getByte(x, y) != 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected int leftMostNonWhitePixel(int y)
+  {
+    if (image instanceof SparseBlackWhiteRaster)
+    {
+      SparseBlackWhiteRaster s = (SparseBlackWhiteRaster) image;
+      return s.getRunCount(y) == 0 ? getRasterWidth() : s.getRunStart(y, 0);
+    }
+    return super.leftMostNonWhitePixel(y);
+  }
+
+  @Override
+  protected int rightMostNonWhitePixel(int y)
+  {
+    if (image instanceof SparseBlackWhiteRaster)
+    {
+      SparseBlackWhiteRaster s = (SparseBlackWhiteRaster) image;
+      int count = s.getRunCount(y);
+      return count == 0 ? 0 : s.getRunEnd(y, count - 1) - 1;
+    }
+    return super.rightMostNonWhitePixel(y);
+  }
+
+  /**
+   * Jumps directly to the next run boundary if the raster is a
+   * SparseBlackWhiteRaster
+   */
+  @Override
+  protected int nextColorChangeHeadingRight(int x, int y)
+  {
+    if (image instanceof SparseBlackWhiteRaster)
+    {
+      SparseBlackWhiteRaster s = (SparseBlackWhiteRaster) image;
+      int i = s.findRunAtOrAfter(x, y);
+      if (i >= s.getRunCount(y))
+      {
+        return getRasterWidth();
+      }
+      return s.getRunStart(y, i) <= x ? s.getRunEnd(y, i) : s.getRunStart(y, i);
+    }
+    return super.nextColorChangeHeadingRight(x, y);
+  }
+
+  @Override
+  protected int nextColorChangeHeadingLeft(int x, int y)
+  {
+    if (image instanceof SparseBlackWhiteRaster)
+    {
+      SparseBlackWhiteRaster s = (SparseBlackWhiteRaster) image;
+      int i = s.findRunAtOrAfter(x, y);
+      if (i < s.getRunCount(y) && s.getRunStart(y, i) <= x)
+      {
+        return s.getRunStart(y, i) - 1;
+      }
+      return i > 0 ? s.getRunEnd(y, i - 1) - 1 : -1;
+    }
+    return super.nextColorChangeHeadingLeft(x, y);
+  }
+
   public boolean isBlack(int x, int y)
   {
     return ((BlackWhiteRaster) image).isBlack(x, y);
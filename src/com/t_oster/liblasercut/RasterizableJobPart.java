@@ -19,6 +19,8 @@
 package com.t_oster.liblasercut;
 
 import com.t_oster.liblasercut.platform.Point;
+import com.t_oster.liblasercut.platform.Util;
+import java.io.IOException;
 
 /**
  * Common functions useful when rasterizing an image.
@@ -36,6 +38,14 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public abstract LaserProperty getLaserProperty();
   
+  /**
+   * Gets the associated raster image
+   * @return the image of this part
+   */
+  public GreyscaleRaster getImage() {
+    return this.image;
+  }
+
   /**
    * Gets the height of the associated raster image
    * @return height in pixels
@@ -86,7 +96,16 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public int cutCompensation()
   {
-    return cutDirectionleftToRight ? 0 : 1;
+    return cutCompensation(cutDirectionleftToRight);
+  }
+
+  /**
+   * Same as cutCompensation(), but for the given direction instead of the
+   * current cut direction of this part
+   */
+  public int cutCompensation(boolean leftToRight)
+  {
+    return leftToRight ? 0 : 1;
   }
   
   /**
@@ -98,7 +117,15 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public boolean hasFinishedCuttingLine(int x, int y)
   {
-    return cutDirectionleftToRight 
+    return hasFinishedCuttingLine(x, y, cutDirectionleftToRight);
+  }
+
+  /**
+   * Same as hasFinishedCuttingLine(x, y), but for the given direction
+   */
+  public boolean hasFinishedCuttingLine(int x, int y, boolean leftToRight)
+  {
+    return leftToRight
       ? (x > rightMostNonWhitePixel(y)) 
       : (x < leftMostNonWhitePixel(y));
   }
@@ -110,7 +137,15 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public int firstNonWhitePixel(int y)
   {
-    return cutDirectionleftToRight
+    return firstNonWhitePixel(y, cutDirectionleftToRight);
+  }
+
+  /**
+   * Same as firstNonWhitePixel(y), but for the given direction
+   */
+  public int firstNonWhitePixel(int y, boolean leftToRight)
+  {
+    return leftToRight
       ? leftMostNonWhitePixel(y)
       : rightMostNonWhitePixel(y);
   }
@@ -136,7 +171,15 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public int lastNonWhitePixel(int y)
   {
-    return cutDirectionleftToRight
+    return lastNonWhitePixel(y, cutDirectionleftToRight);
+  }
+
+  /**
+   * Same as lastNonWhitePixel(y), but for the given direction
+   */
+  public int lastNonWhitePixel(int y, boolean leftToRight)
+  {
+    return leftToRight
       ? rightMostNonWhitePixel(y)
       : leftMostNonWhitePixel(y);
   }
@@ -164,7 +207,15 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public int nextColorChange(int x, int y)
   {
-    return cutDirectionleftToRight
+    return nextColorChange(x, y, cutDirectionleftToRight);
+  }
+
+  /**
+   * Same as nextColorChange(x, y), but for the given direction
+   */
+  public int nextColorChange(int x, int y, boolean leftToRight)
+  {
+    return leftToRight
       ? nextColorChangeHeadingRight(x, y)
       : nextColorChangeHeadingLeft(x, y);
   }
@@ -213,6 +264,256 @@ abstract public class RasterizableJobPart extends JobPart
     return start;
   }
   
+  /**
+   * Returns the direction of the given emitted (non blank) line.
+   * The first line is cut in the current cut direction of this part and
+   * when rastering bidirectional every following line in the opposite
+   * direction of its predecessor.
+   * @param lineIndex number of non blank lines emitted before this line
+   * @param bidirectional if the direction alternates
+   * @return true if the line is cut from left to right
+   */
+  public boolean isLineLeftToRight(int lineIndex, boolean bidirectional)
+  {
+    return bidirectional && lineIndex % 2 == 1
+      ? !cutDirectionleftToRight
+      : cutDirectionleftToRight;
+  }
+
+  /**
+   * Feeds all non blank lines of this part into the given emitter.
+   * Each line starts with a white run over the overscan area in front of
+   * the first non white pixel and ends with a white run over the overscan
+   * area behind the last one.
+   * The direction of every line only depends on its index among the
+   * emitted lines (see isLineLeftToRight), the part itself is not modified.
+   * @param emitter the receiver of the scanlines
+   * @param paddingMm length of the overscan on each side of a line in mm
+   * @param resolution resolution of the part in dpi
+   * @param bidirectional if true, the direction is reversed after every
+   * emitted line
+   * @throws IOException if the emitter throws it
+   */
+  public void feedScanlines(ScanlineEmitter emitter, double paddingMm, double resolution, boolean bidirectional) throws IOException
+  {
+    feedScanlines(emitter, paddingMm, resolution, bidirectional, 0, getRasterHeight(), 0);
+  }
+
+  /**
+   * Feeds the non blank lines in the range [fromY, toY) into the given
+   * emitter. This allows to convert bands of lines independently.
+   * @param emitter the receiver of the scanlines
+   * @param paddingMm length of the overscan on each side of a line in mm
+   * @param resolution resolution of the part in dpi
+   * @param bidirectional if true, the direction is reversed after every
+   * emitted line
+   * @param fromY first line of the band
+   * @param toY line after the last line of the band
+   * @param emittedBefore number of non blank lines above fromY
+   * @return the number of emitted lines
+   * @throws IOException if the emitter throws it
+   */
+  public int feedScanlines(ScanlineEmitter emitter, double paddingMm, double resolution, boolean bidirectional, int fromY, int toY, int emittedBefore) throws IOException
+  {
+    return feedScanlines(emitter, paddingMm, Double.POSITIVE_INFINITY, resolution, bidirectional, fromY, toY, emittedBefore);
+  }
+
+  /**
+   * Same as feedScanlines(emitter, paddingMm, resolution, bidirectional,
+   * fromY, toY, emittedBefore), but white gaps inside a line which are
+   * longer than gapMm are not traversed. Instead the line is ended with
+   * overscan behind the gap and a new line with overscan is started in front
+   * of the next non white pixel, so the laser can rapid over the gap.
+   * @param gapMm minimum length of a gap to skip in mm. Use
+   * Double.POSITIVE_INFINITY to never skip gaps.
+   * @see #getSkipGapThreshold(double, double, double)
+   */
+  public int feedScanlines(ScanlineEmitter emitter, double paddingMm, double gapMm, double resolution, boolean bidirectional, int fromY, int toY, int emittedBefore) throws IOException
+  {
+    double gap = Util.mm2px(gapMm, resolution);
+    int emitted = 0;
+    for (int y = fromY; y < toY; y++)
+    {
+      if (lineIsBlank(y) == false)
+      {
+        feedScanline(emitter, y, isLineLeftToRight(emittedBefore + emitted, bidirectional), paddingMm, gap, resolution);
+        emitted++;
+      }
+    }
+    return emitted;
+  }
+
+  /**
+   * Returns the shortest white gap for which ending the line and moving
+   * over the gap at travel speed is faster than traversing it at engrave
+   * speed. Skipping a gap of length g costs two additional overscans at
+   * engrave speed and a move over g plus both overscans at travel speed:
+   * g/ve &gt; 2o/ve + (g + 2o)/vt holds for g &gt; 2o (vt + ve) / (vt - ve).
+   * @param paddingMm length of the overscan on each side in mm
+   * @param engraveSpeed engrave speed in any unit
+   * @param travelSpeed travel speed in the same unit as engraveSpeed
+   * @return the gap threshold in mm or Double.POSITIVE_INFINITY if skipping
+   * gaps never pays off
+   */
+  public static double getSkipGapThreshold(double paddingMm, double engraveSpeed, double travelSpeed)
+  {
+    if (engraveSpeed <= 0 || travelSpeed <= engraveSpeed)
+    {
+      return Double.POSITIVE_INFINITY;
+    }
+    return 2 * paddingMm * (travelSpeed + engraveSpeed) / (travelSpeed - engraveSpeed);
+  }
+
+  /**
+   * Same as feedScanlines(emitter, paddingMm, resolution, bidirectional),
+   * but optionally scans along the columns instead of the rows of the
+   * image. The coordinates passed to the emitter are always the real
+   * coordinates of the part.
+   * @param alongColumns if true, every scanline is a column of the image
+   * @see #isColumnScanShorter(int)
+   */
+  public void feedScanlines(ScanlineEmitter emitter, double paddingMm, double resolution, boolean bidirectional, boolean alongColumns) throws IOException
+  {
+    feedScanlines(emitter, paddingMm, Double.POSITIVE_INFINITY, resolution, bidirectional, alongColumns);
+  }
+
+  /**
+   * Same as feedScanlines(emitter, paddingMm, resolution, bidirectional,
+   * alongColumns), but skips white gaps longer than gapMm
+   * @see #feedScanlines(ScanlineEmitter, double, double, double, boolean, int, int, int)
+   */
+  public void feedScanlines(final ScanlineEmitter emitter, double paddingMm, double gapMm, double resolution, boolean bidirectional, boolean alongColumns) throws IOException
+  {
+    if (!alongColumns)
+    {
+      feedScanlines(emitter, paddingMm, gapMm, resolution, bidirectional, 0, getRasterHeight(), 0);
+      return;
+    }
+    RasterizableJobPart transposed = new TransposedRasterizableJobPart(this);
+    transposed.feedScanlines(new ScanlineEmitter()
+    {
+      public void startLine(int x, int y) throws IOException
+      {
+        emitter.startLine(y, x);
+      }
+
+      public void run(FloatPowerSpeedFocusProperty property, int x, int y) throws IOException
+      {
+        emitter.run(property, y, x);
+      }
+
+      public void endLine() throws IOException
+      {
+        emitter.endLine();
+      }
+    }, paddingMm, gapMm, resolution, bidirectional, 0, transposed.getRasterHeight(), 0);
+  }
+
+  /**
+   * Estimates whether rastering this part along the columns instead of the
+   * rows would be faster. For both directions the length of all scanlines
+   * from the first to the last non white pixel plus the overscan on both
+   * sides is summed up in a single pass over the image, so a tall, thin
+   * image with many short rows will be rastered along its columns.
+   * @param overscan length of the overscan on each side of a line in pixels
+   * @return true if the scanlines along the columns are shorter in total
+   */
+  public boolean isColumnScanShorter(int overscan)
+  {
+    int width = getRasterWidth();
+    int height = getRasterHeight();
+    int[] columnMin = new int[width];
+    int[] columnMax = new int[width];
+    for (int x = 0; x < width; x++)
+    {
+      columnMin[x] = -1;
+    }
+    long rowLength = 0;
+    for (int y = 0; y < height; y++)
+    {
+      int rowMin = -1;
+      int rowMax = -1;
+      for (int x = 0; x < width; x++)
+      {
+        if (image.getGreyScale(x, y) < 255)
+        {
+          if (rowMin < 0)
+          {
+            rowMin = x;
+          }
+          rowMax = x;
+          if (columnMin[x] < 0)
+          {
+            columnMin[x] = y;
+          }
+          columnMax[x] = y;
+        }
+      }
+      if (rowMin >= 0)
+      {
+        rowLength += rowMax - rowMin + 1 + 2 * overscan;
+      }
+    }
+    long columnLength = 0;
+    for (int x = 0; x < width; x++)
+    {
+      if (columnMin[x] >= 0)
+      {
+        columnLength += columnMax[x] - columnMin[x] + 1 + 2 * overscan;
+      }
+    }
+    return columnLength < rowLength;
+  }
+
+  private void feedScanline(ScanlineEmitter emitter, int y, boolean leftToRight, double paddingMm, double gap, double resolution) throws IOException
+  {
+    Point lineStart = getStartPosition(y);
+    int compensation = cutCompensation(leftToRight);
+
+    //move to prestart
+    int x = firstNonWhitePixel(y, leftToRight);
+    int overscan = Math.round((float)Util.mm2px(paddingMm * (leftToRight ? 1 : -1), resolution));
+
+    emitter.startLine(lineStart.x + x + compensation - overscan, lineStart.y);
+
+    //move to the first point of the scanline
+    emitter.run(getPowerSpeedFocusPropertyForColor(255), lineStart.x + x + compensation, lineStart.y);
+
+    while(!hasFinishedCuttingLine(x, y, leftToRight))
+    {
+      int next = nextColorChange(x, y, leftToRight);
+      if (Math.abs(next - x) > gap && image.getGreyScale(x, y) == 255)
+      {
+        //end the line behind the gap and start a new one in front of the next pixel
+        emitter.run(getPowerSpeedFocusPropertyForColor(255), lineStart.x + x + compensation + overscan, lineStart.y);
+        emitter.endLine();
+        emitter.startLine(lineStart.x + next + compensation - overscan, lineStart.y);
+        emitter.run(getPowerSpeedFocusPropertyForColor(255), lineStart.x + next + compensation, lineStart.y);
+      }
+      else
+      {
+        emitter.run(getPowerSpeedFocusPropertyForPixel(x, y), lineStart.x + next + compensation, lineStart.y);
+      }
+      x = next;
+    }
+
+    // move to post-end
+    emitter.run(getPowerSpeedFocusPropertyForColor(255), lineStart.x + x + compensation + overscan, lineStart.y);
+    emitter.endLine();
+  }
+
+  /**
+   * Returns true if the image can only be read efficiently from top to
+   * bottom, e.g. a StreamingDitheredRaster with an error diffusion.
+   * Reading such an image along the columns or in several passes dithers
+   * it again from the top, so it should be rastered row by row in a
+   * single pass.
+   */
+  public boolean requiresSequentialReads()
+  {
+    return image.requiresSequentialReads();
+  }
+
   /**
    * Calculate power/speed/focus required to laser a given pixel
    * @param x x coordinate of pixel
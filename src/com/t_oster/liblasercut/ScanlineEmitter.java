@@ -0,0 +1,54 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.IOException;
+
+/**
+ * Receives the scanlines of a RasterizableJobPart one after another.
+ * Every line consists of a startLine call, any number of runs and a final
+ * endLine call. All coordinates are absolute pixel coordinates including
+ * the overscan.
+ *
+ * Drivers can implement this to generate their output directly instead of
+ * converting the raster into a VectorPart first.
+ *
+ * @see RasterizableJobPart#feedScanlines(ScanlineEmitter, double, double, boolean)
+ */
+public interface ScanlineEmitter
+{
+
+  /**
+   * Starts a new scanline. The laser has to move to the given position
+   * without lasering.
+   */
+  public void startLine(int x, int y) throws IOException;
+
+  /**
+   * Lasers from the current position to the given position with the given
+   * property. The property may be shared between calls and must not be
+   * modified.
+   */
+  public void run(FloatPowerSpeedFocusProperty property, int x, int y) throws IOException;
+
+  /**
+   * Ends the current scanline
+   */
+  public void endLine() throws IOException;
+}
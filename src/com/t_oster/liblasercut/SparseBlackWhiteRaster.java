@@ -0,0 +1,329 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.DitheringAlgorithm;
+import java.util.BitSet;
+
+/**
+ * A BlackWhiteRaster which stores every row as a sorted list of black runs
+ * instead of a bitmap. Rows without any black pixel only cost one bit in
+ * the blank-row bitmap.
+ *
+ * This is intended for mostly white jobs (logos, text, serial numbers on
+ * a big sheet) where it needs a fraction of the memory of the plain raster
+ * and lets drivers skip blank lines and white areas without scanning them.
+ *
+ * Setting pixels in ascending x order within a row (as all dithering
+ * algorithms do) is an amortized O(1) append.
+ */
+public class SparseBlackWhiteRaster extends BlackWhiteRaster
+{
+
+  private static final int[] NO_RUNS = new int[0];
+
+  /**
+   * For each row the runs as [start0, end0, start1, end1, ...] where start
+   * is the first black pixel and end is the first white pixel after the run
+   */
+  private int[][] runs;
+  /**
+   * Number of used entries in the corresponding runs array (2 per run)
+   */
+  private int[] runLength;
+  private BitSet nonBlankRows;
+
+  public SparseBlackWhiteRaster(int width, int height)
+  {
+    super(width, height, (byte[][]) null);
+    runs = new int[height][];
+    runLength = new int[height];
+    for (int y = 0; y < height; y++)
+    {
+      runs[y] = NO_RUNS;
+    }
+    nonBlankRows = new BitSet(height);
+  }
+
+  /**
+   * Dithers the given raster directly into a new sparse raster
+   */
+  public SparseBlackWhiteRaster(GreyscaleRaster src, DitheringAlgorithm alg, ProgressListener listener)
+  {
+    this(src.getWidth(), src.getHeight());
+    if (listener != null)
+    {
+      this.addProgressListener(listener);
+      alg.addProgressListener(listener);
+    }
+    alg.ditherDirect(src, this);
+  }
+
+  public SparseBlackWhiteRaster(GreyscaleRaster src, DitherAlgorithm dither_algorithm)
+  {
+    this(src, BlackWhiteRaster.getDitheringAlgorithm(dither_algorithm), null);
+  }
+
+  public SparseBlackWhiteRaster(GreyscaleRaster src, DitheringAlgorithm alg)
+  {
+    this(src, alg, null);
+  }
+
+  /**
+   * Returns the index of the first run in row y whose end is bigger than x,
+   * or the number of runs if there is no such run
+   */
+  private int findRun(int x, int y)
+  {
+    int[] r = runs[y];
+    int lo = 0;
+    int hi = runLength[y] / 2;
+    while (lo < hi)
+    {
+      int mid = (lo + hi) >>> 1;
+      if (r[2 * mid + 1] <= x)
+      {
+        lo = mid + 1;
+      }
+      else
+      {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private void insertRun(int y, int index, int start, int end)
+  {
+    int[] r = runs[y];
+    int len = runLength[y];
+    if (len + 2 > r.length)
+    {
+      int[] n = new int[Math.max(4, r.length * 2)];
+      System.arraycopy(r, 0, n, 0, len);
+      r = n;
+      runs[y] = r;
+    }
+    System.arraycopy(r, 2 * index, r, 2 * index + 2, len - 2 * index);
+    r[2 * index] = start;
+    r[2 * index + 1] = end;
+    runLength[y] = len + 2;
+    nonBlankRows.set(y);
+  }
+
+  private void removeRun(int y, int index)
+  {
+    int[] r = runs[y];
+    int len = runLength[y];
+    System.arraycopy(r, 2 * index + 2, r, 2 * index, len - 2 * index - 2);
+    runLength[y] = len - 2;
+    if (runLength[y] == 0)
+    {
+      nonBlankRows.clear(y);
+    }
+  }
+
+  @Override
+  public boolean isBlack(int x, int y)
+  {
+    int i = findRun(x, y);
+    return i < runLength[y] / 2 && runs[y][2 * i] <= x;
+  }
+
+  @Override
+  public void setBlack(int x, int y, boolean black)
+  {
+    int[] r = runs[y];
+    int len = runLength[y];
+    //fast path: appending at the end of the row
+    if (len == 0 || x >= r[len - 1])
+    {
+      if (black)
+      {
+        if (len > 0 && r[len - 1] == x)
+        {
+          r[len - 1]++;
+        }
+        else
+        {
+          insertRun(y, len / 2, x, x + 1);
+        }
+      }
+      return;
+    }
+    int i = findRun(x, y);
+    int count = len / 2;
+    boolean inside = i < count && r[2 * i] <= x;
+    if (black)
+    {
+      if (inside)
+      {
+        return;
+      }
+      boolean joinsLeft = i > 0 && r[2 * i - 1] == x;
+      boolean joinsRight = i < count && r[2 * i] == x + 1;
+      if (joinsLeft && joinsRight)
+      {
+        r[2 * i - 1] = r[2 * i + 1];
+        removeRun(y, i);
+      }
+      else if (joinsLeft)
+      {
+        r[2 * i - 1]++;
+      }
+      else if (joinsRight)
+      {
+        r[2 * i]--;
+      }
+      else
+      {
+        insertRun(y, i, x, x + 1);
+      }
+    }
+    else if (inside)
+    {
+      int start = r[2 * i];
+      int end = r[2 * i + 1];
+      if (start == x && end == x + 1)
+      {
+        removeRun(y, i);
+      }
+      else if (start == x)
+      {
+        r[2 * i]++;
+      }
+      else if (end == x + 1)
+      {
+        r[2 * i + 1]--;
+      }
+      else
+      {
+        r[2 * i + 1] = x;
+        insertRun(y, i + 1, x + 1, end);
+      }
+    }
+  }
+
+  @Override
+  public byte getByte(int x, int y)
+  {
+    int from = x * 8;
+    int to = from + 8;
+    int[] r = runs[y];
+    int len = runLength[y];
+    int result = 0;
+    for (int i = 2 * findRun(from, y); i < len && r[i] < to; i += 2)
+    {
+      int s = Math.max(from, r[i]) - from;
+      int e = Math.min(to, r[i + 1]) - from;
+      //set bits s..e-1 counting from the MSB
+      result |= (0xFF >> s) & ~(0xFF >> e);
+    }
+    return (byte) result;
+  }
+
+  @Override
+  public void setByte(int x, int y, byte value)
+  {
+    int from = x * 8;
+    int to = Math.min(getWidth(), from + 8);
+    for (int px = from; px < to; px++)
+    {
+      setBlack(px, y, (value & (0x80 >> (px - from))) != 0);
+    }
+  }
+
+  /**
+   * Writes one packed row (8 pixels per byte, MSB is the left-most pixel)
+   * into the given array by iterating only over the black runs
+   * @param y the row
+   * @param result array of at least (getWidth()+7)/8 bytes
+   */
+  public void getRow(int y, byte[] result)
+  {
+    int bytes = (getWidth() + 7) / 8;
+    for (int i = 0; i < bytes; i++)
+    {
+      result[i] = 0;
+    }
+    int[] r = runs[y];
+    int len = runLength[y];
+    for (int i = 0; i < len; i += 2)
+    {
+      for (int x = r[i]; x < r[i + 1];)
+      {
+        int bx = x / 8;
+        int s = x % 8;
+        int e = Math.min(8, r[i + 1] - bx * 8);
+        result[bx] |= (0xFF >> s) & ~(0xFF >> e);
+        x = bx * 8 + e;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the given row does not contain any black pixel
+   */
+  public boolean isLineBlank(int y)
+  {
+    return !nonBlankRows.get(y);
+  }
+
+  /**
+   * Returns the first row >= y which contains a black pixel, or -1 if there
+   * is none
+   */
+  public int nextNonBlankLine(int y)
+  {
+    return nonBlankRows.nextSetBit(y);
+  }
+
+  /**
+   * Returns the number of black runs in the given row
+   */
+  public int getRunCount(int y)
+  {
+    return runLength[y] / 2;
+  }
+
+  /**
+   * Returns the x coordinate of the first pixel of the given run
+   */
+  public int getRunStart(int y, int run)
+  {
+    return runs[y][2 * run];
+  }
+
+  /**
+   * Returns the x coordinate of the first white pixel after the given run
+   */
+  public int getRunEnd(int y, int run)
+  {
+    return runs[y][2 * run + 1];
+  }
+
+  /**
+   * Returns the index of the run containing x, or of the first run
+   * right of x, or getRunCount(y) if there is none
+   */
+  public int findRunAtOrAfter(int x, int y)
+  {
+    return findRun(x, y);
+  }
+}
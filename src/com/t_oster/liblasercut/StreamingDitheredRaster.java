@@ -0,0 +1,240 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.DitheringAlgorithm;
+import com.t_oster.liblasercut.dithering.RowDitherer;
+import java.util.Arrays;
+
+/**
+ * A read only BlackWhiteRaster which dithers its source image lazily,
+ * row by row, when the rows are read.
+ * Only a small window of recently dithered rows and the state of the
+ * dithering algorithm (e.g. the error buffers of an error diffusion) are
+ * kept, so the memory needed is proportional to the width of the image
+ * instead of its area, and a driver can start sending before the whole
+ * image has been dithered.
+ *
+ * The raster is meant to be read from top to bottom. Reading a row which
+ * has already left the window is correct, but algorithms which have to
+ * dither in order (like error diffusion) then start over from the top.
+ *
+ * This class is not thread safe.
+ */
+public class StreamingDitheredRaster extends BlackWhiteRaster
+{
+
+  /**
+   * Default number of dithered rows which are kept
+   */
+  public static final int DEFAULT_WINDOW_ROWS = 16;
+
+  /**
+   * A BlackWhiteRaster which only contains one row, used as the target
+   * of the row ditherer
+   */
+  private static class RowTarget extends BlackWhiteRaster
+  {
+
+    private int row = -1;
+    private byte[] bytes = null;
+
+    RowTarget(int width, int height)
+    {
+      super(width, height, (byte[][]) null);
+    }
+
+    void bind(int row, byte[] bytes)
+    {
+      this.row = row;
+      this.bytes = bytes;
+    }
+
+    private void checkRow(int y)
+    {
+      if (y != row)
+      {
+        throw new IllegalStateException("Only row "+row+" can be accessed, not "+y);
+      }
+    }
+
+    @Override
+    public boolean isBlack(int x, int y)
+    {
+      checkRow(y);
+      return (bytes[x >> 3] & (0x80 >> (x & 7))) != 0;
+    }
+
+    @Override
+    public void setBlack(int x, int y, boolean black)
+    {
+      checkRow(y);
+      int mask = 0x80 >> (x & 7);
+      bytes[x >> 3] = (byte) (black ? bytes[x >> 3] | mask : bytes[x >> 3] & ~mask);
+    }
+
+    @Override
+    public byte getByte(int x, int y)
+    {
+      checkRow(y);
+      return bytes[x];
+    }
+
+    @Override
+    public void setByte(int x, int y, byte value)
+    {
+      checkRow(y);
+      bytes[x] = value;
+    }
+  }
+
+  private final GreyscaleRaster source;
+  private final DitheringAlgorithm algorithm;
+  private final RowTarget target;
+  private final byte[][] window;
+  // the image row which is stored in each slot of the window or -1
+  private final int[] windowRow;
+  private RowDitherer ditherer;
+  // the next row a sequential ditherer will produce
+  private int nextRow = 0;
+
+  /**
+   * @param src the image to dither. It has to stay unchanged as long as
+   * this raster is used.
+   * @param alg the dithering algorithm. A copy is used, so later changes
+   * of alg have no effect.
+   * @param windowRows the number of dithered rows which are kept
+   * @param listener listener for the dithering progress or null
+   * @throws IllegalArgumentException if the algorithm can not dither row
+   * by row
+   */
+  public StreamingDitheredRaster(GreyscaleRaster src, DitheringAlgorithm alg, int windowRows, ProgressListener listener)
+  {
+    super(src.getWidth(), src.getHeight(), (byte[][]) null);
+    this.source = src;
+    this.algorithm = alg.clone();
+    if (listener != null)
+    {
+      this.addProgressListener(listener);
+      this.algorithm.addProgressListener(listener);
+    }
+    this.ditherer = algorithm.createRowDitherer(src);
+    if (ditherer == null)
+    {
+      throw new IllegalArgumentException(alg+" can not dither row by row");
+    }
+    this.target = new RowTarget(src.getWidth(), src.getHeight());
+    this.window = new byte[Math.max(1, windowRows)][(src.getWidth() + 7) / 8];
+    this.windowRow = new int[window.length];
+    Arrays.fill(windowRow, -1);
+  }
+
+  public StreamingDitheredRaster(GreyscaleRaster src, DitheringAlgorithm alg)
+  {
+    this(src, alg, DEFAULT_WINDOW_ROWS, null);
+  }
+
+  public StreamingDitheredRaster(GreyscaleRaster src, DitherAlgorithm alg)
+  {
+    this(src, BlackWhiteRaster.getDitheringAlgorithm(alg));
+  }
+
+  /**
+   * Returns true if the algorithm has to dither in order, so reading a row
+   * which has left the window starts over from the top
+   */
+  @Override
+  public boolean requiresSequentialReads()
+  {
+    return ditherer.isSequential();
+  }
+
+  private void ditherIntoWindow(int y)
+  {
+    int slot = y % window.length;
+    Arrays.fill(window[slot], (byte) 0);
+    target.bind(y, window[slot]);
+    ditherer.ditherRow(y, target);
+    windowRow[slot] = y;
+  }
+
+  /**
+   * Returns the packed bytes of row y, dithering it if necessary
+   */
+  private byte[] row(int y)
+  {
+    int slot = y % window.length;
+    if (windowRow[slot] != y)
+    {
+      if (!ditherer.isSequential())
+      {
+        ditherIntoWindow(y);
+      }
+      else
+      {
+        if (y < nextRow)
+        {
+          //the row is gone, start over
+          ditherer = algorithm.createRowDitherer(source);
+          nextRow = 0;
+        }
+        while (nextRow <= y)
+        {
+          ditherIntoWindow(nextRow++);
+        }
+      }
+    }
+    return window[slot];
+  }
+
+  @Override
+  public boolean isBlack(int x, int y)
+  {
+    return (row(y)[x >> 3] & (0x80 >> (x & 7))) != 0;
+  }
+
+  @Override
+  public void setBlack(int x, int y, boolean black)
+  {
+    throw new UnsupportedOperationException("StreamingDitheredRaster is read only");
+  }
+
+  @Override
+  public byte getByte(int x, int y)
+  {
+    return row(y)[x];
+  }
+
+  @Override
+  public void setByte(int x, int y, byte value)
+  {
+    throw new UnsupportedOperationException("StreamingDitheredRaster is read only");
+  }
+
+  /**
+   * Copies one packed row (8 pixels per byte) into the given array
+   * @param y the row
+   * @param result array of at least (getWidth()+7)/8 bytes
+   */
+  public void getRow(int y, byte[] result)
+  {
+    byte[] r = row(y);
+    System.arraycopy(r, 0, result, 0, r.length);
+  }
+}
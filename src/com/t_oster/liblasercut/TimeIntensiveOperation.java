@@ -18,76 +18,342 @@
  **/
 package com.t_oster.liblasercut;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is for easy support for Progress Listeners just extend this class
  * and use the fireProgressChanged and fireTaskNameChanged method.
  *
+ * Listeners are called without holding a lock, except for rate limited
+ * progress events without an executor, which hold the monitor of the
+ * operation so a held back value can not overtake a newer one. Progress
+ * events can be limited to a maximum rate (see setMaxProgressRate) and
+ * delivered on an executor (see setProgressExecutor), so a slow listener
+ * does not slow down the operation itself.
+ *
+ * Operations stop with a CancellationException when their cancellation
+ * token is cancelled. Subclasses call checkCancelled in their loops,
+ * setProgress calls it on every update.
+ *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public abstract class TimeIntensiveOperation
 {
 
+  /**
+   * Delivers the last progress value which was held back by the rate limit
+   */
+  private static class TrailingProgressTimer
+  {
+    static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "TimeIntensiveOperation progress");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * A listener call waiting for the executor. Either a progress change
+   * or, if task is not null, a task change.
+   */
+  private static class ProgressEvent
+  {
+    final String task;
+    int progress;
+
+    ProgressEvent(String task, int progress)
+    {
+      this.task = task;
+      this.progress = progress;
+    }
+  }
+
   //has to be initialized in the getter, because it will be
   //null after deserialization
-  private List<ProgressListener> listeners = null;
+  private transient volatile List<ProgressListener> listeners = null;
+  private transient volatile Executor progressExecutor = null;
+  //minimum time between two progress events in ns, 0 for no limit
+  private transient volatile long minProgressInterval = 0;
+  private transient volatile long lastProgressEvent = 0;
+  private transient volatile int lastDeliveredProgress = -1;
+  //guarded by this
+  private transient boolean trailingProgressScheduled = false;
+  //events waiting for the executor, guarded by this
+  private transient ArrayDeque<ProgressEvent> pendingEvents = null;
+  //true while a runnable draining pendingEvents is on the executor, guarded by this
+  private transient boolean drainScheduled = false;
+  private transient volatile CancellationToken cancellationToken = null;
 
   private List<ProgressListener> getListeners()
   {
-    if (listeners == null)
+    List<ProgressListener> result = listeners;
+    if (result == null)
     {
-      listeners = new LinkedList<ProgressListener>();
+      synchronized (this)
+      {
+        if (listeners == null)
+        {
+          listeners = new CopyOnWriteArrayList<ProgressListener>();
+        }
+        result = listeners;
+      }
     }
-    return listeners;
+    return result;
   }
 
   public void addProgressListener(ProgressListener l)
   {
-    synchronized(getListeners())
-    {
-      getListeners().add(l);
-    }
+    getListeners().add(l);
   }
 
   public void removeProgressListener(ProgressListener l)
   {
-    synchronized(getListeners())
+    getListeners().remove(l);
+  }
+
+  /**
+   * Sets the executor which calls the listeners. If null (the default),
+   * they are called on the thread which reports the progress.
+   * Progress and task events are delivered one at a time in the order
+   * they were fired. Progress events which follow each other while they
+   * are waiting for the executor are merged, so listeners always get the
+   * latest progress but not every step.
+   */
+  public void setProgressExecutor(Executor executor)
+  {
+    this.progressExecutor = executor;
+  }
+
+  public Executor getProgressExecutor()
+  {
+    return progressExecutor;
+  }
+
+  /**
+   * Limits progress events to the given number per second. Progress
+   * reported in between is held back, and the latest value is delivered
+   * once the interval has passed. Completion (100) is delivered at once.
+   * Without a progress executor, the held back value is delivered on a
+   * shared timer thread. 0 (the default) delivers every change.
+   */
+  public void setMaxProgressRate(int eventsPerSecond)
+  {
+    if (eventsPerSecond < 0)
     {
-      getListeners().remove(l);
+      throw new IllegalArgumentException("The progress rate can not be negative");
     }
+    this.minProgressInterval = eventsPerSecond == 0 ? 0 : 1000000000L / eventsPerSecond;
+  }
+
+  public int getMaxProgressRate()
+  {
+    long interval = minProgressInterval;
+    return interval == 0 ? 0 : (int) (1000000000L / interval);
+  }
+
+  /**
+   * Sets the token which cancels this operation. If none is set (the
+   * default), the token bound to the running thread is used
+   * (see CancellationToken.current).
+   */
+  public void setCancellationToken(CancellationToken token)
+  {
+    this.cancellationToken = token;
+  }
+
+  /**
+   * Returns the token which cancels this operation
+   */
+  public CancellationToken getCancellationToken()
+  {
+    CancellationToken token = cancellationToken;
+    return token == null ? CancellationToken.current() : token;
   }
 
-  public void fireProgressChanged(int progress)
+  /**
+   * @throws java.util.concurrent.CancellationException if the operation
+   * has been cancelled
+   */
+  protected void checkCancelled()
   {
-    synchronized(getListeners())
+    getCancellationToken().throwIfCancelled();
+  }
+
+  public void fireProgressChanged(final int progress)
+  {
+    List<ProgressListener> ls = listeners;
+    if (ls == null || ls.isEmpty())
     {
-      for (ProgressListener l : getListeners())
+      return;
+    }
+    Executor executor = progressExecutor;
+    if (executor == null)
+    {
+      for (ProgressListener l : ls)
       {
         l.progressChanged(this, progress);
       }
     }
+    else
+    {
+      enqueue(new ProgressEvent(null, progress), executor);
+    }
   }
 
-  public void fireTaskChanged(String name)
+  public void fireTaskChanged(final String name)
   {
-    synchronized(getListeners())
+    List<ProgressListener> ls = listeners;
+    if (ls == null || ls.isEmpty())
     {
-      for (ProgressListener l : getListeners())
+      return;
+    }
+    Executor executor = progressExecutor;
+    if (executor == null)
+    {
+      for (ProgressListener l : ls)
       {
         l.taskChanged(this, name);
       }
     }
+    else
+    {
+      enqueue(new ProgressEvent(name, 0), executor);
+    }
+  }
+
+  private void enqueue(ProgressEvent event, Executor executor)
+  {
+    synchronized (this)
+    {
+      if (pendingEvents == null)
+      {
+        pendingEvents = new ArrayDeque<ProgressEvent>();
+      }
+      ProgressEvent last = pendingEvents.peekLast();
+      if (event.task == null && last != null && last.task == null)
+      {
+        last.progress = event.progress;
+        return;
+      }
+      pendingEvents.addLast(event);
+      if (drainScheduled)
+      {
+        return;
+      }
+      drainScheduled = true;
+    }
+    executor.execute(new Runnable()
+    {
+      public void run()
+      {
+        drainEvents();
+      }
+    });
+  }
+
+  private void drainEvents()
+  {
+    while (true)
+    {
+      ProgressEvent event;
+      synchronized (this)
+      {
+        event = pendingEvents.pollFirst();
+        if (event == null)
+        {
+          drainScheduled = false;
+          return;
+        }
+      }
+      for (ProgressListener l : getListeners())
+      {
+        if (event.task == null)
+        {
+          l.progressChanged(this, event.progress);
+        }
+        else
+        {
+          l.taskChanged(this, event.task);
+        }
+      }
+    }
+  }
+
+  private volatile int progress = 0;
+
+  public int getProgress()
+  {
+    return progress;
   }
-  private int progress = 0;
 
   protected void setProgress(int progress)
   {
+    checkCancelled();
     if (progress != this.progress)
     {
       this.progress = progress;
-      this.fireProgressChanged(this.progress);
+      long interval = minProgressInterval;
+      if (interval == 0)
+      {
+        this.fireProgressChanged(progress);
+        return;
+      }
+      long wait = lastProgressEvent + interval - System.nanoTime();
+      if (wait > 0 && progress < 100 && lastDeliveredProgress != -1)
+      {
+        scheduleTrailingProgress(wait);
+        return;
+      }
+      deliverProgress();
+    }
+  }
+
+  /**
+   * Fires the current progress unless it has already been delivered.
+   * Synchronized, so the trailing delivery can not overtake a newer value.
+   */
+  private synchronized void deliverProgress()
+  {
+    int current = this.progress;
+    if (current != lastDeliveredProgress)
+    {
+      lastDeliveredProgress = current;
+      lastProgressEvent = System.nanoTime();
+      this.fireProgressChanged(current);
+    }
+  }
+
+  private void scheduleTrailingProgress(long delayNanos)
+  {
+    synchronized (this)
+    {
+      if (trailingProgressScheduled)
+      {
+        return;
+      }
+      trailingProgressScheduled = true;
     }
+    TrailingProgressTimer.TIMER.schedule(new Runnable()
+    {
+      public void run()
+      {
+        synchronized (TimeIntensiveOperation.this)
+        {
+          trailingProgressScheduled = false;
+        }
+        deliverProgress();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
   }
 }
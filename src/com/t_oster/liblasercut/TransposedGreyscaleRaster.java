@@ -0,0 +1,60 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A view of a GreyscaleRaster with x and y swapped, so that the rows of
+ * this raster are the columns of the underlying one.
+ * Changes are written through to the underlying raster.
+ */
+public class TransposedGreyscaleRaster implements GreyscaleRaster
+{
+
+  private final GreyscaleRaster raster;
+
+  public TransposedGreyscaleRaster(GreyscaleRaster raster)
+  {
+    this.raster = raster;
+  }
+
+  public int getWidth()
+  {
+    return raster.getHeight();
+  }
+
+  public int getHeight()
+  {
+    return raster.getWidth();
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return raster.getGreyScale(y, x);
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    raster.setGreyScale(y, x, grey);
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    return raster.requiresSequentialReads();
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+
+/**
+ * A RasterizableJobPart with x and y swapped, so that its scanlines are the
+ * columns of the original part. The coordinates of everything emitted from
+ * this part have to be swapped back.
+ */
+class TransposedRasterizableJobPart extends RasterizableJobPart
+{
+
+  private final RasterizableJobPart part;
+
+  TransposedRasterizableJobPart(RasterizableJobPart part)
+  {
+    this.part = part;
+    this.image = new TransposedGreyscaleRaster(part.image);
+    this.start = new Point(part.start.y, part.start.x);
+    this.cutDirectionleftToRight = part.cutDirectionleftToRight;
+  }
+
+  @Override
+  public LaserProperty getLaserProperty()
+  {
+    return part.getLaserProperty();
+  }
+
+  @Override
+  public FloatPowerSpeedFocusProperty getPowerSpeedFocusPropertyForColor(int color)
+  {
+    return part.getPowerSpeedFocusPropertyForColor(color);
+  }
+
+  @Override
+  public double getDPI()
+  {
+    return part.getDPI();
+  }
+
+  @Override
+  public int getMinX()
+  {
+    return part.getMinY();
+  }
+
+  @Override
+  public int getMinY()
+  {
+    return part.getMinX();
+  }
+
+  @Override
+  public int getMaxX()
+  {
+    return part.getMaxY();
+  }
+
+  @Override
+  public int getMaxY()
+  {
+    return part.getMaxX();
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+/**
+ * Error diffusion by Bill Atkinson, which only passes on 3/4 of the error.
+ * This gives more contrast and clean highlights and shadows.
+ */
+public class Atkinson extends ErrorDiffusion
+{
+
+  private static final int[][] KERNEL =
+  {
+    {1, 0, 1}, {2, 0, 1},
+    {-1, 1, 1}, {0, 1, 1}, {1, 1, 1},
+    {0, 2, 1}
+  };
+
+  public Atkinson()
+  {
+    super(KERNEL, 8);
+  }
+
+  @Override
+  public DitheringAlgorithm clone()
+  {
+    return copySettingsTo(new Atkinson());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Atkinson";
+  }
+}
@@ -20,39 +20,36 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.utils.PixelKernels;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class Average extends  DitheringAlgorithm
+public class Average extends BandDitheringAlgorithm
 {
 
+  private transient int thresh = 0;
+
   @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  protected void prepareBands(GreyscaleRaster src)
   {
-    long lumTotal = 0;
-    int pixelcount = 0;
-    int width = src.getWidth();
-    int height = src.getHeight();
-
-    for (int y = 0; y < height; y++)
-    {
-      for (int x = 0; x < width; x++)
-      {
-        lumTotal += src.getGreyScale(x, y);
-      }
-      setProgress((100 * pixelcount++) / (2 * height));
-    }
+    long pixels = (long) src.getWidth() * src.getHeight();
+    thresh = pixels == 0 ? 0 : (int) (sumGreyScale(src) / pixels);
+  }
 
-    int thresh = (int) (lumTotal / height / width);
-    for (int y = 0; y < height; y++)
+  @Override
+  protected void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY)
+  {
+    int width = src.getWidth();
+    int[] row = new int[width];
+    byte[] packed = new byte[(width + 7) / 8];
+    for (int y = fromY; y < toY; y++)
     {
-      for (int x = 0; x < width; x++)
-      {
-        this.setBlack(src, target, x, y, src.getGreyScale(x, y) < thresh);
-      }
-      setProgress((100 * pixelcount++) / (2 * height));
+      readRow(src, y, row);
+      PixelKernels.packBelow(row, width, thresh, packed);
+      setBlackRow(src, target, y, packed);
+      rowDithered();
     }
   }
 
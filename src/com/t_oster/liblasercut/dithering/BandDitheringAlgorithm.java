@@ -0,0 +1,113 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A dithering algorithm where every row of the output only depends on the
+ * same row of the input and on state computed by prepareBands. Bands of
+ * rows are therefore dithered independently, in parallel if a pool is set,
+ * and single rows can be dithered on demand.
+ */
+public abstract class BandDitheringAlgorithm extends DitheringAlgorithm
+{
+
+  /**
+   * Returns the number of rows the height of every band is a multiple of,
+   * e.g. the size of a threshold matrix
+   */
+  protected int getBandAlignment()
+  {
+    return 1;
+  }
+
+  /**
+   * Called once before the bands of src are dithered, to compute state
+   * which is shared by all bands
+   */
+  protected void prepareBands(GreyscaleRaster src)
+  {
+  }
+
+  /**
+   * Dithers the rows fromY (inclusive) to toY (exclusive) into target, or
+   * into src itself if target is null.
+   * Implementations call rowDithered after each row to report progress.
+   * This may be called from several threads at the same time for
+   * different bands.
+   */
+  protected abstract void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY);
+
+  @Override
+  protected void doDithering(final GreyscaleRaster src, final BlackWhiteRaster target)
+  {
+    final int height = src.getHeight();
+    startRowProgress(height);
+    prepareBands(src);
+    int alignment = Math.max(1, getBandAlignment());
+    int bandHeight = getBandHeight(height);
+    bandHeight = (bandHeight + alignment - 1) / alignment * alignment;
+    //only the plain BlackWhiteRaster is known to allow setting pixels of
+    //different rows from different threads
+    if (bandHeight >= height || target == null || target.getClass() != BlackWhiteRaster.class)
+    {
+      ditherBand(src, target, 0, height);
+      return;
+    }
+    List<Task<Void>> tasks = new ArrayList<Task<Void>>();
+    for (int y = 0; y < height; y += bandHeight)
+    {
+      final int fromY = y;
+      final int toY = Math.min(height, y + bandHeight);
+      tasks.add(new Task<Void>()
+      {
+        @Override
+        public Void call()
+        {
+          ditherBand(src, target, fromY, toY);
+          return null;
+        }
+      });
+    }
+    runAll(tasks);
+  }
+
+  @Override
+  public RowDitherer createRowDitherer(final GreyscaleRaster src)
+  {
+    startRowProgress(src.getHeight());
+    prepareBands(src);
+    return new RowDitherer()
+    {
+      public void ditherRow(int y, BlackWhiteRaster target)
+      {
+        ditherBand(src, target, y, y + 1);
+      }
+
+      public boolean isSequential()
+      {
+        return false;
+      }
+    };
+  }
+}
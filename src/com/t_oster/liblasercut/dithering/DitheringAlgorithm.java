@@ -19,11 +19,20 @@
 package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.CancellationToken;
 import com.t_oster.liblasercut.Customizable;
 import com.t_oster.liblasercut.GreyscaleRaster;
 import com.t_oster.liblasercut.TimeIntensiveOperation;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.utils.BufferedImageAdapter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -32,6 +41,30 @@ import java.util.Arrays;
 public abstract class DitheringAlgorithm extends TimeIntensiveOperation implements Customizable, Cloneable
 {
 
+  private static final int BANDS_PER_WORKER = 4;
+  private static final int MIN_BAND_HEIGHT = 16;
+
+  private transient ForkJoinPool pool = null;
+  // progress of the current band dithering
+  private transient AtomicInteger rowsDone = null;
+  private transient int rowsTotal = 0;
+
+  /**
+   * Sets the pool on which algorithms which support band dithering
+   * (see BandDitheringAlgorithm) dither bands of rows in parallel. If null (the default), everything
+   * runs on the calling thread.
+   * The result is the same in both cases.
+   */
+  public void setForkJoinPool(ForkJoinPool pool)
+  {
+    this.pool = pool;
+  }
+
+  public ForkJoinPool getForkJoinPool()
+  {
+    return pool;
+  }
+
   protected void setBlack(GreyscaleRaster src, BlackWhiteRaster target, int x, int y, boolean black)
   {
     if (target != null)
@@ -44,6 +77,46 @@ public abstract class DitheringAlgorithm extends TimeIntensiveOperation implemen
     }
   }
 
+  /**
+   * Reads the grey values of row y into row
+   */
+  protected void readRow(GreyscaleRaster src, int y, int[] row)
+  {
+    if (src instanceof BufferedImageAdapter)
+    {
+      ((BufferedImageAdapter) src).getGreyScaleRow(y, row);
+      return;
+    }
+    int width = src.getWidth();
+    for (int x = 0; x < width; x++)
+    {
+      row[x] = src.getGreyScale(x, y);
+    }
+  }
+
+  /**
+   * Stores row y, packed 8 pixels per byte as by PixelKernels.packBelow,
+   * in target, or in src itself if target is null
+   */
+  protected void setBlackRow(GreyscaleRaster src, BlackWhiteRaster target, int y, byte[] packed)
+  {
+    int width = src.getWidth();
+    if (target != null)
+    {
+      for (int bx = 0; bx * 8 < width; bx++)
+      {
+        target.setByte(bx, y, packed[bx]);
+      }
+    }
+    else
+    {
+      for (int x = 0; x < width; x++)
+      {
+        src.setGreyScale(x, y, (packed[x >> 3] & (0x80 >> (x & 7))) != 0 ? 0 : 255);
+      }
+    }
+  }
+
   public BlackWhiteRaster dither(GreyscaleRaster input)
   {
     BlackWhiteRaster target = new BlackWhiteRaster(input.getWidth(), input.getHeight());
@@ -61,8 +134,165 @@ public abstract class DitheringAlgorithm extends TimeIntensiveOperation implemen
     doDithering(input, output);
   }
 
+  /**
+   * Dithers src into target, or into src itself if target is null
+   */
   protected abstract void doDithering(GreyscaleRaster src, BlackWhiteRaster target);
 
+  /**
+   * Returns an object which dithers src on demand one row at a time, or
+   * null if this algorithm can only dither whole images.
+   * Progress is reported as rows are dithered.
+   */
+  public RowDitherer createRowDitherer(GreyscaleRaster src)
+  {
+    return null;
+  }
+
+  /**
+   * Returns the height of the bands a task of height rows is split into
+   * for the pool, or height if there is no pool
+   */
+  protected int getBandHeight(int height)
+  {
+    return pool == null ? height
+      : Math.max(MIN_BAND_HEIGHT, height / (pool.getParallelism() * BANDS_PER_WORKER) + 1);
+  }
+
+  /**
+   * Starts a new progress count for rowDithered
+   */
+  protected void startRowProgress(int rows)
+  {
+    rowsDone = new AtomicInteger();
+    rowsTotal = rows;
+  }
+
+  /**
+   * Reports that one more row has been dithered. May be called from
+   * several threads at the same time.
+   */
+  protected void rowDithered()
+  {
+    checkCancelled();
+    int done = rowsDone.incrementAndGet();
+    int progress = (int) (100L * done / rowsTotal);
+    if (progress != (int) (100L * (done - 1) / rowsTotal))
+    {
+      synchronized (this)
+      {
+        setProgress(progress);
+      }
+    }
+  }
+
+  /**
+   * Returns the sum of all grey values of src. The rows are summed in
+   * parallel if a pool is set.
+   */
+  protected long sumGreyScale(final GreyscaleRaster src)
+  {
+    final int height = src.getHeight();
+    final int width = src.getWidth();
+    int bandHeight = getBandHeight(height);
+    List<Task<Long>> tasks = new ArrayList<Task<Long>>();
+    for (int y = 0; y < height; y += bandHeight)
+    {
+      final int fromY = y;
+      final int toY = Math.min(height, y + bandHeight);
+      tasks.add(new Task<Long>()
+      {
+        @Override
+        public Long call()
+        {
+          long sum = 0;
+          for (int y = fromY; y < toY; y++)
+          {
+            for (int x = 0; x < width; x++)
+            {
+              sum += src.getGreyScale(x, y);
+            }
+          }
+          return sum;
+        }
+      });
+    }
+    long sum = 0;
+    for (Long s : runAll(tasks))
+    {
+      sum += s;
+    }
+    return sum;
+  }
+
+  /**
+   * A Callable which does not throw checked exceptions
+   */
+  protected abstract static class Task<T> implements Callable<T>
+  {
+    public abstract T call();
+  }
+
+  /**
+   * Runs the given tasks on the pool and returns their results in the
+   * same order. Without a pool or with only one task they run on the
+   * calling thread one after another.
+   */
+  protected <T> List<T> runAll(List<Task<T>> tasks)
+  {
+    List<T> result = new ArrayList<T>(tasks.size());
+    if (pool == null || tasks.size() <= 1)
+    {
+      for (Task<T> t : tasks)
+      {
+        result.add(t.call());
+      }
+      return result;
+    }
+    //the workers check the token of the calling thread
+    final CancellationToken token = getCancellationToken();
+    List<Callable<T>> bound = new ArrayList<Callable<T>>(tasks.size());
+    for (final Task<T> t : tasks)
+    {
+      bound.add(new Callable<T>()
+      {
+        public T call()
+        {
+          CancellationToken previous = CancellationToken.bind(token);
+          try
+          {
+            return t.call();
+          }
+          finally
+          {
+            CancellationToken.bind(previous);
+          }
+        }
+      });
+    }
+    for (Future<T> f : pool.invokeAll(bound))
+    {
+      try
+      {
+        result.add(f.get());
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      catch (ExecutionException e)
+      {
+        if (e.getCause() instanceof RuntimeException)
+        {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return result;
+  }
+
   @Override
   public String[] getPropertyKeys() {
     return new String[0];
@@ -104,7 +334,7 @@ public abstract class DitheringAlgorithm extends TimeIntensiveOperation implemen
     for (int i = 0; i < own.length; i++)
     {
       String key = own[i];
-      if (!Util.differ(getProperty(key),other.getProperty(key)))
+      if (Util.differ(getProperty(key),other.getProperty(key)))
       {
         return false;
       }
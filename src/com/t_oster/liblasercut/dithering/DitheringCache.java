@@ -0,0 +1,251 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ProgressListener;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches dithered images, so dithering the same image with the same
+ * algorithm and settings again (e.g. in a preview where the user switches
+ * back and forth between settings) returns the previous result at once.
+ *
+ * The key is a fingerprint of the pixels of the source image together
+ * with the algorithm and its properties (see DitheringAlgorithm.equals).
+ * The most recently used results are kept up to a given number of bytes.
+ * Older results are only softly referenced, so they are kept until the
+ * memory is needed.
+ *
+ * The returned rasters are shared and must not be modified.
+ * This class is thread safe.
+ */
+public class DitheringCache
+{
+
+  /**
+   * Default size of the strongly referenced results in bytes
+   */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private static class Key
+  {
+    final long fingerprint;
+    final int width;
+    final int height;
+    final DitheringAlgorithm algorithm;
+    final int hash;
+
+    Key(long fingerprint, int width, int height, DitheringAlgorithm algorithm)
+    {
+      this.fingerprint = fingerprint;
+      this.width = width;
+      this.height = height;
+      this.algorithm = algorithm;
+      this.hash = 31 * (31 * (31 * (int) (fingerprint ^ (fingerprint >>> 32)) + width) + height) + algorithm.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Key))
+      {
+        return false;
+      }
+      Key k = (Key) o;
+      return fingerprint == k.fingerprint && width == k.width && height == k.height
+        && algorithm.equals(k.algorithm);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+  }
+
+  private static class SoftEntry extends SoftReference<BlackWhiteRaster>
+  {
+    final Key key;
+
+    SoftEntry(Key key, BlackWhiteRaster value, ReferenceQueue<BlackWhiteRaster> queue)
+    {
+      super(value, queue);
+      this.key = key;
+    }
+  }
+
+  private final long maxBytes;
+  private long bytes = 0;
+  private final LinkedHashMap<Key, BlackWhiteRaster> recent = new LinkedHashMap<Key, BlackWhiteRaster>(16, 0.75f, true);
+  private final Map<Key, SoftEntry> evicted = new HashMap<Key, SoftEntry>();
+  private final ReferenceQueue<BlackWhiteRaster> queue = new ReferenceQueue<BlackWhiteRaster>();
+  private int hits = 0;
+  private int misses = 0;
+
+  public DitheringCache()
+  {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param maxBytes the size of the results which are strongly referenced
+   */
+  public DitheringCache(long maxBytes)
+  {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns a 64 bit hash over the size and all grey values of src
+   */
+  public static long fingerprint(GreyscaleRaster src)
+  {
+    //FNV-1a over the grey values
+    long hash = 0xcbf29ce484222325L;
+    hash = (hash ^ src.getWidth()) * 0x100000001b3L;
+    hash = (hash ^ src.getHeight()) * 0x100000001b3L;
+    for (int y = 0; y < src.getHeight(); y++)
+    {
+      for (int x = 0; x < src.getWidth(); x++)
+      {
+        hash = (hash ^ src.getGreyScale(x, y)) * 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+
+  private static long sizeOf(BlackWhiteRaster r)
+  {
+    return (long) ((r.getWidth() + 7) / 8) * r.getHeight();
+  }
+
+  public BlackWhiteRaster dither(GreyscaleRaster src, DitheringAlgorithm alg)
+  {
+    return dither(src, alg, null);
+  }
+
+  /**
+   * Returns src dithered with alg, either from the cache or by dithering
+   * it now
+   * @param listener listener for the dithering progress or null
+   */
+  public BlackWhiteRaster dither(GreyscaleRaster src, DitheringAlgorithm alg, ProgressListener listener)
+  {
+    //a copy, so later changes of alg do not change the key
+    Key key = new Key(fingerprint(src), src.getWidth(), src.getHeight(), alg.clone());
+    BlackWhiteRaster result = get(key);
+    if (result == null)
+    {
+      result = new BlackWhiteRaster(src, alg, listener);
+      put(key, result);
+    }
+    return result;
+  }
+
+  private synchronized BlackWhiteRaster get(Key key)
+  {
+    expungeCleared();
+    BlackWhiteRaster result = recent.get(key);
+    if (result == null)
+    {
+      SoftEntry e = evicted.remove(key);
+      result = e == null ? null : e.get();
+      if (result != null)
+      {
+        //used again, keep it strongly
+        put(key, result);
+      }
+    }
+    if (result == null)
+    {
+      misses++;
+    }
+    else
+    {
+      hits++;
+    }
+    return result;
+  }
+
+  private synchronized void put(Key key, BlackWhiteRaster value)
+  {
+    BlackWhiteRaster old = recent.put(key, value);
+    if (old != null)
+    {
+      bytes -= sizeOf(old);
+    }
+    bytes += sizeOf(value);
+    Iterator<Map.Entry<Key, BlackWhiteRaster>> it = recent.entrySet().iterator();
+    //evict the least recently used results, but always keep the newest
+    while (bytes > maxBytes && recent.size() > 1 && it.hasNext())
+    {
+      Map.Entry<Key, BlackWhiteRaster> eldest = it.next();
+      it.remove();
+      bytes -= sizeOf(eldest.getValue());
+      evicted.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue(), queue));
+    }
+  }
+
+  private void expungeCleared()
+  {
+    for (Object r = queue.poll(); r != null; r = queue.poll())
+    {
+      SoftEntry e = (SoftEntry) r;
+      if (evicted.get(e.key) == e)
+      {
+        evicted.remove(e.key);
+      }
+    }
+  }
+
+  /**
+   * Removes all results
+   */
+  public synchronized void clear()
+  {
+    recent.clear();
+    evicted.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Returns the size of the strongly referenced results in bytes
+   */
+  public synchronized long getSize()
+  {
+    return bytes;
+  }
+
+  public synchronized int getHits()
+  {
+    return hits;
+  }
+
+  public synchronized int getMisses()
+  {
+    return misses;
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+
+/**
+ * Error diffusion dithering with an arbitrary diffusion kernel.
+ *
+ * The kernel is a table of {dx, dy, weight} entries relative to the current
+ * pixel, where dy=0 entries have to point to the right (dx > 0) and dy > 0
+ * entries to the following rows. The weights are divided by the given
+ * divisor. If the weights sum up to less than the divisor, the rest of the
+ * error is dropped (as done by Atkinson).
+ *
+ * All kernels run through the same loop on fixed point integers. The
+ * error for the following rows is collected in a ring of flat row buffers
+ * which are padded by the kernel radius, so no bounds checks are needed.
+ * With serpentine traversal every second row is processed from right to
+ * left with the kernel mirrored, which avoids directional artifacts.
+ */
+public abstract class ErrorDiffusion extends DitheringAlgorithm
+{
+
+  private static final int SHIFT = 16;
+  private static final int HALF = 1 << (SHIFT - 1);
+  private static final String SERPENTINE = "Serpentine";
+  private static final String[] properties = new String[]{SERPENTINE};
+
+  private final int[] kernelDx;
+  private final int[] kernelDy;
+  private final int[] kernelWeight;
+  private final int radius;
+  private final int rows;
+  protected boolean serpentine = false;
+
+  /**
+   * @param kernel entries of {dx, dy, weight}
+   * @param divisor the sum of weights which corresponds to the full error
+   */
+  protected ErrorDiffusion(int[][] kernel, int divisor)
+  {
+    kernelDx = new int[kernel.length];
+    kernelDy = new int[kernel.length];
+    kernelWeight = new int[kernel.length];
+    int r = 0;
+    int maxDy = 0;
+    for (int i = 0; i < kernel.length; i++)
+    {
+      int dx = kernel[i][0];
+      int dy = kernel[i][1];
+      if (dy < 0 || (dy == 0 && dx <= 0))
+      {
+        throw new IllegalArgumentException("Kernel entries have to point right or down");
+      }
+      kernelDx[i] = dx;
+      kernelDy[i] = dy;
+      //fixed point weight, rounded to nearest
+      kernelWeight[i] = (int) (((long) kernel[i][2] << SHIFT) + divisor / 2) / divisor;
+      r = Math.max(r, Math.abs(dx));
+      maxDy = Math.max(maxDy, dy);
+    }
+    radius = r;
+    rows = maxDy + 1;
+  }
+
+  public boolean isSerpentine()
+  {
+    return serpentine;
+  }
+
+  public void setSerpentine(boolean serpentine)
+  {
+    this.serpentine = serpentine;
+  }
+
+  @Override
+  public String[] getPropertyKeys()
+  {
+    return properties;
+  }
+
+  @Override
+  public void setProperty(String key, Object value)
+  {
+    if (SERPENTINE.equals(key))
+    {
+      this.serpentine = (Boolean) value;
+    }
+    else
+    {
+      throw new IllegalArgumentException("No such key "+key);
+    }
+  }
+
+  @Override
+  public Object getProperty(String key)
+  {
+    if (SERPENTINE.equals(key))
+    {
+      return (Boolean) this.serpentine;
+    }
+    throw new IllegalArgumentException("No such key "+key);
+  }
+
+  @Override
+  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  {
+    int[][] buffers = new int[rows][src.getWidth() + 2 * radius];
+    startRowProgress(src.getHeight());
+    for (int y = 0; y < src.getHeight(); y++)
+    {
+      ditherRow(src, target, y, buffers);
+    }
+  }
+
+  @Override
+  public RowDitherer createRowDitherer(final GreyscaleRaster src)
+  {
+    final int[][] buffers = new int[rows][src.getWidth() + 2 * radius];
+    startRowProgress(src.getHeight());
+    return new RowDitherer()
+    {
+      private int next = 0;
+
+      public void ditherRow(int y, BlackWhiteRaster target)
+      {
+        if (y != next)
+        {
+          throw new IllegalStateException("Expected row "+next+" but got "+y);
+        }
+        ErrorDiffusion.this.ditherRow(src, target, y, buffers);
+        next++;
+      }
+
+      public boolean isSequential()
+      {
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Dithers row y. buffers[y % rows] holds the error diffused into row y
+   * and is cleared while reading, the following buffers receive the error
+   * for the following rows.
+   */
+  private void ditherRow(GreyscaleRaster src, BlackWhiteRaster target, int y, int[][] buffers)
+  {
+    int width = src.getWidth();
+    int stride = width + 2 * radius;
+    int entries = kernelDx.length;
+    int[][] targets = new int[entries][];
+    int[] current = buffers[y % rows];
+    for (int k = 0; k < entries; k++)
+    {
+      targets[k] = buffers[(y + kernelDy[k]) % rows];
+    }
+    boolean leftToRight = !serpentine || y % 2 == 0;
+    int step = leftToRight ? 1 : -1;
+    int x = leftToRight ? 0 : width - 1;
+    for (int i = 0; i < width; i++, x += step)
+    {
+      int p = x + radius;
+      int value = (src.getGreyScale(x, y) << SHIFT) + current[p];
+      current[p] = 0;
+      boolean black = value < (128 << SHIFT);
+      this.setBlack(src, target, x, y, black);
+      int error = (value - (black ? 0 : 255 << SHIFT) + HALF) >> SHIFT;
+      if (error != 0)
+      {
+        for (int k = 0; k < entries; k++)
+        {
+          targets[k][p + step * kernelDx[k]] += error * kernelWeight[k];
+        }
+      }
+    }
+    //the error which went into the padding is dropped
+    for (int p = 0; p < radius; p++)
+    {
+      current[p] = 0;
+      current[stride - 1 - p] = 0;
+    }
+    rowDithered();
+  }
+
+  /**
+   * Copies the settings of this algorithm to the given clone
+   */
+  protected DitheringAlgorithm copySettingsTo(ErrorDiffusion clone)
+  {
+    clone.serpentine = serpentine;
+    return clone;
+  }
+}
@@ -20,6 +20,10 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  *
@@ -28,56 +32,149 @@ import com.t_oster.liblasercut.GreyscaleRaster;
 public class FloydSteinberg extends DitheringAlgorithm
 {
 
+  /**
+   * Number of pixels after which a row publishes its progress to the
+   * row below it
+   */
+  private static final int PUBLISH_INTERVAL = 32;
+
+  /**
+   * Dithers the image row by row. The error for the next row is collected
+   * in a ring of two flat row buffers.
+   *
+   * If a pool is set and the target is a plain BlackWhiteRaster, the rows
+   * are processed in parallel as a wavefront: every row only needs the
+   * row above it to be finished up to two pixels to the right of the
+   * current pixel, so each worker takes the next row and follows the
+   * previous one with a small lag. All contributions are summed as in the
+   * sequential case, so the result is exactly the same.
+   */
   @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  protected void doDithering(final GreyscaleRaster src, final BlackWhiteRaster target)
   {
-    int pixelcount = 0;
-    /**
-     * We have to copy the input image, because we will
-     * alter the pixels during dither process and don't want
-     * to destroy the input image
-     */
-    int[][] input = new int[src.getWidth()][2];
-    for (int x = 0; x < src.getWidth(); x++)
+    final int width = src.getWidth();
+    final int height = src.getHeight();
+    final int[][] errors = new int[2][width];
+    startRowProgress(height);
+    int workers = getForkJoinPool() == null ? 1 : getForkJoinPool().getParallelism();
+    if (workers <= 1 || height <= 1 || target == null || target.getClass() != BlackWhiteRaster.class)
+    {
+      for (int y = 0; y < height; y++)
+      {
+        ditherRow(src, target, y, errors, null);
+      }
+      return;
+    }
+    final AtomicIntegerArray progress = new AtomicIntegerArray(height);
+    final AtomicInteger nextRow = new AtomicInteger();
+    List<Task<Void>> tasks = new ArrayList<Task<Void>>(workers);
+    for (int i = 0; i < Math.min(workers, height); i++)
     {
-      input[x][1] = src.getGreyScale(x, 0);
+      tasks.add(new Task<Void>()
+      {
+        @Override
+        public Void call()
+        {
+          //rows are taken in order, so the lowest unfinished row always
+          //belongs to a running worker and never waits
+          for (int y = nextRow.getAndIncrement(); y < height; y = nextRow.getAndIncrement())
+          {
+            ditherRow(src, target, y, errors, progress);
+          }
+          return null;
+        }
+      });
     }
-    for (int y = 0; y < src.getHeight(); y++)
+    runAll(tasks);
+  }
+
+  @Override
+  public RowDitherer createRowDitherer(final GreyscaleRaster src)
+  {
+    final int[][] errors = new int[2][src.getWidth()];
+    startRowProgress(src.getHeight());
+    return new RowDitherer()
     {
-      // copy lower line to upper line
-      // and read in next line from picture
-      for (int x = 0; x < input.length; x++)
+      private int next = 0;
+
+      public void ditherRow(int y, BlackWhiteRaster target)
       {
-        input[x][0] = input[x][1];
-        if (y + 1 < src.getHeight())
+        if (y != next)
         {
-          input[x][1] = (src.getGreyScale(x, y + 1));
+          throw new IllegalStateException("Expected row "+next+" but got "+y);
         }
+        FloydSteinberg.this.ditherRow(src, target, y, errors, null);
+        next++;
       }
 
-      for (int x = 0; x < input.length; x++)
+      public boolean isSequential()
       {
-        this.setBlack(src, target, x, y, input[x][0] <= 127);
-        int error = input[x][0] - ((input[x][0] <= 127) ? 0 : 255);
-        if (x + 1 < input.length)
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Dithers row y. errors[y % 2] contains the error diffused from row y-1
+   * and is cleared while reading, errors[(y + 1) % 2] receives the error
+   * for row y+1.
+   * If progress is not null, the number of finished pixels of every row is
+   * published there and the row waits for the row above it.
+   */
+  private void ditherRow(GreyscaleRaster src, BlackWhiteRaster target, int y, int[][] errors, AtomicIntegerArray progress)
+  {
+    int width = src.getWidth();
+    boolean hasNextRow = y + 1 < src.getHeight();
+    int[] current = errors[y % 2];
+    int[] next = errors[(y + 1) % 2];
+    //pixels of the previous row which are finished
+    int available = progress == null || y == 0 ? width : 0;
+    int carry = 0;
+    for (int x = 0; x < width; x++)
+    {
+      int needed = Math.min(x + 2, width);
+      while (available < needed)
+      {
+        available = progress.get(y - 1);
+        if (available < needed)
         {
-          input[x + 1][0] = (input[x + 1][0] + 7 * error / 16);
-          if (y + 1 < src.getHeight())
-          {
-            input[x + 1][1] = (input[x + 1][1] + 1 * error / 16);
-          }
+          //the worker of the previous row stops if the job is cancelled
+          checkCancelled();
+          Thread.yield();
         }
-        if (y + 1 < src.getHeight())
+      }
+      int value = src.getGreyScale(x, y) + current[x] + carry;
+      current[x] = 0;
+      boolean black = value <= 127;
+      this.setBlack(src, target, x, y, black);
+      int error = value - (black ? 0 : 255);
+      carry = 0;
+      if (x + 1 < width)
+      {
+        carry = 7 * error / 16;
+        if (hasNextRow)
         {
-          input[x][1] = (input[x][1] + 5 * error / 16);
-          if (x > 0)
-          {
-            input[x - 1][1] = (input[x - 1][1] + 3 * error / 16);
-          }
+          next[x + 1] += 1 * error / 16;
         }
       }
-      setProgress((100 * pixelcount++) / (src.getHeight()));
+      if (hasNextRow)
+      {
+        next[x] += 5 * error / 16;
+        if (x > 0)
+        {
+          next[x - 1] += 3 * error / 16;
+        }
+      }
+      if (progress != null && (x + 1) % PUBLISH_INTERVAL == 0)
+      {
+        progress.set(y, x + 1);
+      }
+    }
+    if (progress != null)
+    {
+      progress.set(y, width);
     }
+    rowDithered();
   }
 
   @Override
@@ -20,12 +20,14 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.utils.PixelKernels;
+import java.util.Arrays;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class Grid extends DitheringAlgorithm
+public class Grid extends BandDitheringAlgorithm
 {
 
   private static String[] properties = new String[]{"Blocksize", "Blockdistance"};
@@ -70,40 +72,47 @@ public class Grid extends DitheringAlgorithm
   protected int blocksize = 10;
   protected int blockdistance = 5;
 
+  private transient int thresh = 0;
+
   @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  protected void prepareBands(GreyscaleRaster src)
   {
-    long lumTotal = 0;
-    int pixelcount = 0;
-    int width = src.getWidth();
-    int height = src.getHeight();
+    long pixels = (long) src.getWidth() * src.getHeight();
+    thresh = pixels == 0 ? 0 : (int) (sumGreyScale(src) / pixels);
+  }
 
-    for (int y = 0; y < height; y++)
+  @Override
+  protected void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY)
+  {
+    int width = src.getWidth();
+    int[] row = new int[width];
+    byte[] packed = new byte[(width + 7) / 8];
+    //the blocks of a row, as a bit mask in the same layout as packed
+    byte[] mask = new byte[packed.length];
+    for (int x = 0; x < width; x++)
     {
-      for (int x = 0; x < width; x++)
+      if (x % (blocksize + blockdistance) <= blocksize)
       {
-        lumTotal += src.getGreyScale(x, y);
+        mask[x >> 3] |= 0x80 >> (x & 7);
       }
-      setProgress((100 * pixelcount++) / (2 * height));
     }
-
-    int thresh = (int) (lumTotal / height / width);
-    for (int y = 0; y < height; y++)
+    for (int y = fromY; y < toY; y++)
     {
-      for (int x = 0; x < width; x++)
+      if (y % (blocksize + blockdistance) <= blocksize)
       {
-        if (y % (blocksize + blockdistance) <= blocksize
-          && x % (blocksize + blockdistance) <= blocksize
-          && src.getGreyScale(x, y) < thresh)
-        {
-          this.setBlack(src, target, x, y, true);
-        }
-        else
+        readRow(src, y, row);
+        PixelKernels.packBelow(row, width, thresh, packed);
+        for (int i = 0; i < packed.length; i++)
         {
-          this.setBlack(src, target, x, y, false);
+          packed[i] &= mask[i];
         }
       }
-      setProgress((100 * pixelcount++) / (2 * height));
+      else
+      {
+        Arrays.fill(packed, (byte) 0);
+      }
+      setBlackRow(src, target, y, packed);
+      rowDithered();
     }
   }
 
@@ -0,0 +1,51 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+/**
+ * Error diffusion to the 12 nearest unprocessed pixels
+ * (Jarvis, Judice and Ninke 1976)
+ */
+public class JarvisJudiceNinke extends ErrorDiffusion
+{
+
+  private static final int[][] KERNEL =
+  {
+    {1, 0, 7}, {2, 0, 5},
+    {-2, 1, 3}, {-1, 1, 5}, {0, 1, 7}, {1, 1, 5}, {2, 1, 3},
+    {-2, 2, 1}, {-1, 2, 3}, {0, 2, 5}, {1, 2, 3}, {2, 2, 1}
+  };
+
+  public JarvisJudiceNinke()
+  {
+    super(KERNEL, 48);
+  }
+
+  @Override
+  public DitheringAlgorithm clone()
+  {
+    return copySettingsTo(new JarvisJudiceNinke());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Jarvis-Judice-Ninke";
+  }
+}
@@ -25,23 +25,21 @@ import com.t_oster.liblasercut.GreyscaleRaster;
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class None extends DitheringAlgorithm
+public class None extends BandDitheringAlgorithm
 {
 
   @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  protected void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY)
   {
-    
-    for (int x = 0; x < src.getWidth(); x++)
+    int width = src.getWidth();
+    for (int y = fromY; y < toY; y++)
     {
-      for (int y = 0; y < src.getHeight(); y++)
+      for (int x = 0; x < width; x++)
       {
         this.setBlack(src, target, x, y, src.getGreyScale(x, y) <= 127);
       }
-      
-      setProgress((100 * x) / (src.getHeight()));
+      rowDithered();
     }
-    
   }
 
   @Override
@@ -25,7 +25,7 @@ import com.t_oster.liblasercut.GreyscaleRaster;
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class Ordered extends DitheringAlgorithm
+public class Ordered extends BandDitheringAlgorithm
 {
 
   protected int[][] getThresholdMatrix()
@@ -47,61 +47,88 @@ public class Ordered extends DitheringAlgorithm
     };
     return filter;
   }
-  @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
-  {
-    int width = src.getWidth();
-    int height = src.getHeight();
-    int[][] filter = getThresholdMatrix();
-    int nPatWid = filter.length;
 
+  // threshold matrix of the current dithering
+  private transient int[][] filter = null;
+  /**
+   * For every row of the threshold matrix, every column the 8 pixels of a
+   * byte can start at and every grey value: the packed output byte if all
+   * 8 pixels had that value
+   */
+  private transient byte[][][] patterns = null;
 
-    int x = 0;
-    int y = 0;
-    int pixelcount = 0;
+  @Override
+  protected int getBandAlignment()
+  {
+    return getThresholdMatrix().length;
+  }
 
-    for (y = 0; y < (height - nPatWid); y = y + nPatWid)
+  @Override
+  protected void prepareBands(GreyscaleRaster src)
+  {
+    filter = getThresholdMatrix();
+    int n = filter.length;
+    patterns = new byte[n][n][256];
+    for (int row = 0; row < n; row++)
     {
-
-      for (x = 0; x < (width - nPatWid); x = x + nPatWid)
+      for (int column = 0; column < n; column++)
       {
-
-        for (int xdelta = 0; xdelta < nPatWid; xdelta++)
+        for (int grey = 0; grey < 256; grey++)
         {
-          for (int ydelta = 0; ydelta < nPatWid; ydelta++)
+          int bits = 0;
+          for (int i = 0; i < 8; i++)
           {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
+            if (grey < filter[(column + i) % n][row])
+            {
+              bits |= 0x80 >> i;
+            }
           }
+          patterns[row][column][grey] = (byte) bits;
         }
       }
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
+    }
+  }
+
+  @Override
+  protected void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY)
+  {
+    int width = src.getWidth();
+    int nPatWid = filter.length;
+    for (int y = fromY; y < toY; y++)
+    {
+      if (target == null)
       {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
+        for (int x = 0; x < width; x++)
         {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
-          {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
+          this.setBlack(src, target, x, y, src.getGreyScale(x, y) < filter[x % nPatWid][y % nPatWid]);
         }
       }
-      setProgress((100 * pixelcount++) / (height));
-    }
-
-    // y is at max; loop through x
-    for (x = 0; x < (width); x = x + nPatWid)
-    {
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
+      else
       {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
+        //threshold 8 pixels into one byte
+        byte[][] rowPatterns = patterns[y % nPatWid];
+        for (int bx = 0; bx * 8 < width; bx++)
         {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
+          int x = bx * 8;
+          byte[] pattern = rowPatterns[x % nPatWid];
+          int pixels = Math.min(8, width - x);
+          int bits = 0;
+          for (int i = 0; i < pixels; i++)
           {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
+            int grey = src.getGreyScale(x + i, y);
+            if ((grey & ~0xFF) == 0)
+            {
+              bits |= pattern[grey] & (0x80 >> i);
+            }
+            else if (grey < filter[(x + i) % nPatWid][y % nPatWid])
+            {
+              bits |= 0x80 >> i;
+            }
           }
+          target.setByte(bx, y, (byte) bits);
         }
       }
+      rowDithered();
     }
   }
 
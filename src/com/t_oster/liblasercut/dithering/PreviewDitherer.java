@@ -0,0 +1,259 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.AreaAveragedGreyscaleRaster;
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Dithers a preview of an image in the background.
+ * Instead of dithering the image at full resolution and scaling the result
+ * down, the image is first scaled down to the preview size by area
+ * averaging and the small proxy is dithered. This starts with a coarse
+ * proxy and refines it at doubled resolutions until the preview size is
+ * reached, so a first preview is shown almost at once, independent of the
+ * resolution of the image.
+ *
+ * Starting a new preview after a settings change should cancel the old
+ * one. If a DitheringCache is given, the proxies of every refinement level
+ * are dithered through it, so going back to settings which have been
+ * previewed before shows the previews at once.
+ */
+public class PreviewDitherer
+{
+
+  /**
+   * Receives the previews. It is called on the background thread, so
+   * Swing users have to pass the result to the event dispatch thread.
+   */
+  public interface Listener
+  {
+
+    /**
+     * @param source the ditherer which produced the preview
+     * @param preview the dithered proxy
+     * @param finished true if this is the final preview
+     */
+    public void previewReady(PreviewDitherer source, BlackWhiteRaster preview, boolean finished);
+  }
+
+  /**
+   * The number of times the resolution is doubled until the final preview
+   */
+  private static final int REFINEMENTS = 3;
+
+  /**
+   * A view of the proxy which stops the dithering when cancelled
+   */
+  private class CancellableRaster implements GreyscaleRaster
+  {
+
+    private final GreyscaleRaster raster;
+
+    CancellableRaster(GreyscaleRaster raster)
+    {
+      this.raster = raster;
+    }
+
+    public int getWidth()
+    {
+      return raster.getWidth();
+    }
+
+    public int getHeight()
+    {
+      return raster.getHeight();
+    }
+
+    public int getGreyScale(int x, int y)
+    {
+      if (x == 0 && cancelled)
+      {
+        throw new CancellationException();
+      }
+      return raster.getGreyScale(x, y);
+    }
+
+    public void setGreyScale(int x, int y, int grey)
+    {
+      raster.setGreyScale(x, y, grey);
+    }
+
+    public boolean requiresSequentialReads()
+    {
+      return raster.requiresSequentialReads();
+    }
+  }
+
+  private final GreyscaleRaster source;
+  private final DitheringAlgorithm algorithm;
+  private final int width;
+  private final int height;
+  private final Listener listener;
+  private final DitheringCache cache;
+  private volatile boolean cancelled = false;
+  private volatile boolean done = false;
+  private Thread thread = null;
+
+  /**
+   * @param src the image. It must not be changed until the preview is done.
+   * @param alg the algorithm. A copy is used.
+   * @param maxWidth maximum width of the preview
+   * @param maxHeight maximum height of the preview
+   * @param listener receives the previews
+   */
+  public PreviewDitherer(GreyscaleRaster src, DitheringAlgorithm alg, int maxWidth, int maxHeight, Listener listener)
+  {
+    this(src, alg, maxWidth, maxHeight, listener, null);
+  }
+
+  /**
+   * @param src the image. It must not be changed until the preview is done.
+   * @param alg the algorithm. A copy is used.
+   * @param maxWidth maximum width of the preview
+   * @param maxHeight maximum height of the preview
+   * @param listener receives the previews. Previews from the cache are
+   * shared and must not be modified.
+   * @param cache the cache for the dithered proxies or null
+   */
+  public PreviewDitherer(GreyscaleRaster src, DitheringAlgorithm alg, int maxWidth, int maxHeight, Listener listener, DitheringCache cache)
+  {
+    this.source = src;
+    this.algorithm = alg.clone();
+    double scale = Math.min(1, Math.min((double) maxWidth / src.getWidth(), (double) maxHeight / src.getHeight()));
+    this.width = Math.max(1, (int) Math.round(src.getWidth() * scale));
+    this.height = Math.max(1, (int) Math.round(src.getHeight() * scale));
+    this.listener = listener;
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the size of the final preview
+   */
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  /**
+   * Starts dithering on a new daemon thread
+   */
+  public synchronized void start()
+  {
+    if (thread != null)
+    {
+      throw new IllegalStateException("Already started");
+    }
+    thread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          PreviewDitherer.this.run();
+        }
+        catch (CancellationException e)
+        {
+          //nothing to do
+        }
+        finally
+        {
+          done = true;
+        }
+      }
+    }, "Preview dithering");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Dithers all previews on the calling thread
+   * @throws CancellationException if cancel was called
+   */
+  public void run()
+  {
+    for (int level = REFINEMENTS; level >= 0; level--)
+    {
+      if (cancelled)
+      {
+        throw new CancellationException();
+      }
+      int w = Math.max(1, width >> level);
+      int h = Math.max(1, height >> level);
+      if (level > 0 && w == Math.max(1, width >> (level - 1)) && h == Math.max(1, height >> (level - 1)))
+      {
+        //too small to be refined at this level
+        continue;
+      }
+      GreyscaleRaster proxy = new AreaAveragedGreyscaleRaster(source, w, h);
+      BlackWhiteRaster preview = cache == null ? algorithm.dither(new CancellableRaster(proxy))
+        : cache.dither(new CancellableRaster(proxy), algorithm);
+      if (cancelled)
+      {
+        throw new CancellationException();
+      }
+      listener.previewReady(this, preview, level == 0);
+    }
+  }
+
+  /**
+   * Stops dithering as soon as possible. No more previews are delivered
+   * after this returns, except one which is currently being delivered.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  /**
+   * Returns true if the background thread has finished or was cancelled
+   */
+  public boolean isDone()
+  {
+    return done;
+  }
+
+  /**
+   * Waits for the background thread to finish
+   */
+  public void join() throws InterruptedException
+  {
+    Thread t;
+    synchronized (this)
+    {
+      t = thread;
+    }
+    if (t != null)
+    {
+      t.join();
+    }
+  }
+}
@@ -20,35 +20,90 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.utils.PixelKernels;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class Random extends DitheringAlgorithm
+public class Random extends BandDitheringAlgorithm
 {
 
+  private static String[] properties = new String[]{"Seed"};
+
   @Override
-  protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
+  public String[] getPropertyKeys()
   {
-    int width = src.getWidth();
-    int height = src.getHeight();
-    int pixelcount = 0;
-    java.util.Random r = new java.util.Random();
+    return properties;
+  }
+
+  @Override
+  public void setProperty(String key, Object value)
+  {
+    if (properties[0].equals(key))
+    {
+      this.seed = (Integer) value;
+    }
+    else
+    {
+      throw new IllegalArgumentException("No such key "+key);
+    }
+  }
 
-    for (int y = 0; y < height; y++)
+  @Override
+  public Object getProperty(String key)
+  {
+    if (properties[0].equals(key))
+    {
+      return (Integer) this.seed;
+    }
+    throw new IllegalArgumentException("No such key "+key);
+  }
+
+  /**
+   * The seed of the random thresholds. Every row uses its own generator
+   * derived from it, so the result only depends on the seed and the image,
+   * also when dithering in parallel. It is a property, so it is saved with
+   * the settings and is part of equality (e.g. for the DitheringCache).
+   */
+  protected int seed = 0;
+
+  public void setSeed(int seed)
+  {
+    this.seed = seed;
+  }
+
+  public int getSeed()
+  {
+    return seed;
+  }
+
+  @Override
+  protected void ditherBand(GreyscaleRaster src, BlackWhiteRaster target, int fromY, int toY)
+  {
+    int width = src.getWidth();
+    int[] row = new int[width];
+    int[] thresholds = new int[width];
+    byte[] packed = new byte[(width + 7) / 8];
+    for (int y = fromY; y < toY; y++)
     {
+      java.util.Random r = new java.util.Random(seed ^ (y * 0x9E3779B97F4A7C15L));
       for (int x = 0; x < width; x++)
       {
-        this.setBlack(src, target, x, y, src.getGreyScale(x, y) < r.nextInt(256));
+        thresholds[x] = r.nextInt(256);
       }
-      setProgress((100 * pixelcount++) / (height));
+      readRow(src, y, row);
+      PixelKernels.packBelow(row, width, thresholds, packed);
+      setBlackRow(src, target, y, packed);
+      rowDithered();
     }
   }
 
   @Override
   public DitheringAlgorithm clone() {
-    return new Random();
+    Random clone = new Random();
+    clone.seed = seed;
+    return clone;
   }
 
   @Override
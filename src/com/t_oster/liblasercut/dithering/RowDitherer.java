@@ -0,0 +1,44 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+
+/**
+ * Dithers one image row by row on demand, keeping only the state which is
+ * needed for the following rows (e.g. the error buffers of an error
+ * diffusion). Created by DitheringAlgorithm.createRowDitherer.
+ */
+public interface RowDitherer
+{
+
+  /**
+   * Dithers row y of the source image into row y of target.
+   * Only row y of target is written.
+   * @throws IllegalStateException if the ditherer is sequential and y is
+   * not the row after the previously dithered one
+   */
+  public void ditherRow(int y, BlackWhiteRaster target);
+
+  /**
+   * Returns true if the rows have to be dithered in order, starting at 0.
+   * Otherwise any row can be dithered at any time.
+   */
+  public boolean isSequential();
+}
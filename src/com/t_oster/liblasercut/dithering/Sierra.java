@@ -0,0 +1,50 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+/**
+ * Error diffusion to three rows with the kernel of Frankie Sierra (1989)
+ */
+public class Sierra extends ErrorDiffusion
+{
+
+  private static final int[][] KERNEL =
+  {
+    {1, 0, 5}, {2, 0, 3},
+    {-2, 1, 2}, {-1, 1, 4}, {0, 1, 5}, {1, 1, 4}, {2, 1, 2},
+    {-1, 2, 2}, {0, 2, 3}, {1, 2, 2}
+  };
+
+  public Sierra()
+  {
+    super(KERNEL, 32);
+  }
+
+  @Override
+  public DitheringAlgorithm clone()
+  {
+    return copySettingsTo(new Sierra());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Sierra";
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+/**
+ * The smallest variant of the Sierra error diffusion, which is about as
+ * fast as Floyd-Steinberg
+ */
+public class SierraLite extends ErrorDiffusion
+{
+
+  private static final int[][] KERNEL =
+  {
+    {1, 0, 2},
+    {-1, 1, 1}, {0, 1, 1}
+  };
+
+  public SierraLite()
+  {
+    super(KERNEL, 4);
+  }
+
+  @Override
+  public DitheringAlgorithm clone()
+  {
+    return copySettingsTo(new SierraLite());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Sierra Lite";
+  }
+}
@@ -32,7 +32,6 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -312,11 +311,31 @@ abstract class EpilogCutter extends LaserCutter
     //connect to lasercutter
     pl.taskChanged(this, "connecting"+nb);
     connect();
-    pl.progressChanged(this, (int) ((double) 60*number/count));
-    //send job
-    pl.taskChanged(this, "sending"+nb);
-    sendPjlJob(job, pjlData);
-    pl.progressChanged(this, (int) ((double) 90*number/count));
+    boolean sent = false;
+    try
+    {
+      pl.progressChanged(this, (int) ((double) 60*number/count));
+      //send job
+      pl.taskChanged(this, "sending"+nb);
+      sendPjlJob(job, pjlData);
+      pl.progressChanged(this, (int) ((double) 90*number/count));
+      sent = true;
+    }
+    finally
+    {
+      //also close the connection if sending failed or has been cancelled
+      if (!sent)
+      {
+        try
+        {
+          disconnect();
+        }
+        catch (IOException e)
+        {
+          //the original exception is more interesting
+        }
+      }
+    }
     //disconnect
     disconnect();
   }
@@ -421,6 +440,47 @@ abstract class EpilogCutter extends LaserCutter
     }
   }
 
+  /**
+   * Same as encode(List, List), but works directly on the backing arrays
+   * to avoid boxing every byte
+   */
+  public void encode(ByteArrayList line, ByteArrayList result)
+  {
+    byte[] d = line.array();
+    int off = line.offset();
+    int idx = 0;
+    int r = line.size();
+    result.clear(r + r / 127 + 1);
+    while (idx < r)
+    {
+      int p;
+      p = idx + 1;
+      while (p < r && p < idx + 128 && d[off + p] == d[off + idx])
+      {
+        p++;
+      }
+      if (p - idx >= 2)
+      {
+        // run length
+        result.addByte((byte) (1 - (p - idx)));
+        result.addByte(d[off + idx]);
+        idx = p;
+      }
+      else
+      {
+        p = idx;
+        while (p < r && p < idx + 127
+          && (p + 1 == r || d[off + p] != d[off + p + 1]))
+        {
+          p++;
+        }
+        result.addByte((byte) (p - idx - 1));
+        result.addAll(d, off + idx, p - idx);
+        idx = p;
+      }
+    }
+  }
+
   private byte[] generateRaster3dPCL(Raster3dPart rp) throws UnsupportedEncodingException, IOException
   {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
@@ -463,25 +523,14 @@ abstract class EpilogCutter extends LaserCutter
 	rp.getInvertedRasterLine(y, line);
         for (int n = 0; n < line.size(); n++)
         {//Apperantly the other power settings are ignored, so we have to scale
-          int x = line.get(n);
-          x = x >= 0 ? x : 256 + x;
+          int x = line.getByte(n) & 0xFF;
           int scalex = x * prop.getPower() / 100;
-          byte bx = (byte) (scalex < 128 ? scalex : scalex - 256);
-          line.set(n, bx);
+          line.setByte(n, (byte) scalex);
         }
         //Remove leading zeroes, but keep track of the offset
-        int jump = 0;
-
-        while (line.size() > 0 && line.get(0) == 0)
-        {
-          line.remove(0);
-          jump++;
-        }
+        int jump = line.trimLeading((byte) 0);
         //Remove trailing zeroes
-        while (line.size() > 0 && line.get(line.size()-1) == 0)
-        {
-          line.remove(line.size()-1);
-        }
+        line.trimTrailing((byte) 0);
         if (line.size() > 0)
         {
           out.printf("\033*p%dX", sp.x + jump);
@@ -493,7 +542,7 @@ abstract class EpilogCutter extends LaserCutter
           else
           {
             out.printf("\033*b%dA", -line.size());
-            Collections.reverse(line);
+            line.reverse();
           }
           encode(line, encoded);
           int len = encoded.size();
@@ -503,10 +552,7 @@ abstract class EpilogCutter extends LaserCutter
             pcks++;
           }
           out.printf("\033*b%dW", pcks * 8);
-          for (byte s : encoded)
-          {
-            out.write(s);
-          }
+          out.write(encoded.array(), encoded.offset(), len);
           for (int k = 0; k < 8 - (len % 8); k++)
           {
             out.write((byte) 128);
@@ -594,19 +640,15 @@ abstract class EpilogCutter extends LaserCutter
       ByteArrayList encoded = new ByteArrayList(rp.getRasterWidth());
       for (int y = 0; y < rp.getRasterHeight(); y++)
       {
-        rp.getRasterLine(y, line);
-        //Remove leading zeroes, but keep track of the offset
-        int jump = 0;
-        while (line.size() > 0 && line.get(0) == 0)
+        if (rp.lineIsBlank(y))
         {
-          line.remove(0);
-          jump++;
+          continue;
         }
+        rp.getRasterLine(y, line);
+        //Remove leading zeroes, but keep track of the offset
+        int jump = line.trimLeading((byte) 0);
         //Remove trailing zeroes
-        while (line.size() > 0 && line.get(line.size()-1) == 0)
-        {
-          line.remove(line.size()-1);
-        }
+        line.trimTrailing((byte) 0);
         if (line.size() > 0)
         {
           out.printf("\033*p%dX", sp.x + jump * 8);
@@ -618,7 +660,7 @@ abstract class EpilogCutter extends LaserCutter
           else
           {
             out.printf("\033*b%dA", -line.size());
-            Collections.reverse(line);
+            line.reverse();
           }
           encode(line, encoded);
           int len = encoded.size();
@@ -634,10 +676,7 @@ abstract class EpilogCutter extends LaserCutter
            * in ctrl-cut its number of packed bytes
            */
           out.printf("\033*b%dW", pcks * 8);
-          for (byte s : encoded)
-          {
-            out.write(s);
-          }
+          out.write(encoded.array(), encoded.offset(), len);
           for (int k = 0; k < 8 - (len % 8); k++)
           {
             out.write((byte) 128);
@@ -922,20 +961,9 @@ abstract class EpilogCutter extends LaserCutter
         result += Math.max((double) (p.x - sp.x) / VECTOR_MOVESPEED_X,
           (double) (p.y - sp.y) / VECTOR_MOVESPEED_Y);
         double linespeed = ((double) RASTER_LINESPEED * ((PowerSpeedFocusProperty) rp.getLaserProperty()).getSpeed()) / 100;
-        ByteArrayList line = new ByteArrayList(rp.getRasterWidth());
         for (int y = 0; y < rp.getRasterHeight(); y++)
-        {//Find any black point
-          boolean lineEmpty = true;
-	  rp.getRasterLine(y, line);
-          for (byte b : line)
-          {
-            if (b != 0)
-            {
-              lineEmpty = false;
-              break;
-            }
-          }
-          if (!lineEmpty)
+        {
+          if (!rp.lineIsBlank(y))
           {
             int w = rp.getRasterWidth();
             result += (double) RASTER_LINEOFFSET + (double) w / linespeed;
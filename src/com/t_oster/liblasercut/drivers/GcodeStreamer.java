@@ -0,0 +1,515 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import com.t_oster.liblasercut.CancellationToken;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.LinkedList;
+
+/**
+ * Streams G-code lines to a controller without waiting for the response
+ * to each line.
+ *
+ * The controller answers every line with "ok" or "error" once it has
+ * taken the line out of its receive buffer, so the sender knows how much
+ * of the buffer is still used and keeps sending as long as the next line
+ * fits. The buffer is limited either in bytes, which is the character
+ * counting protocol recommended by Grbl, or in lines, which fits firmwares
+ * like Marlin and Smoothie. The responses are read on a separate thread
+ * and matched to the sent lines in order.
+ *
+ * Optionally every line is sent as "N&lt;number&gt; &lt;line&gt;*&lt;checksum&gt;",
+ * so the controller detects corrupted lines and requests them again with
+ * "Resend: &lt;number&gt;" (or "rs &lt;number&gt;"). The streamer then sends
+ * the lines from that number on again, before any new line.
+ *
+ * send and finish have to be called from one thread.
+ */
+abstract class GcodeStreamer
+{
+
+  /**
+   * Number of sent lines which are kept for resending
+   */
+  static final int HISTORY_LINES = 1024;
+
+  private static class Pending
+  {
+    final String line;
+    final int cost;
+    final int generation;
+
+    Pending(String line, int cost, int generation)
+    {
+      this.line = line;
+      this.cost = cost;
+      this.generation = generation;
+    }
+  }
+
+  private static class Sent
+  {
+    final int number;
+    final String data;
+
+    Sent(int number, String data)
+    {
+      this.number = number;
+      this.data = data;
+    }
+  }
+
+  private final PrintStream out;
+  private final String lineEnd;
+  private final int capacity;
+  private final boolean countBytes;
+  private boolean lineNumbers = false;
+  private Thread reader = null;
+  // lines which have been sent but not yet answered, oldest first
+  private final LinkedList<Pending> pending = new LinkedList<Pending>();
+  private int used = 0;
+  private IOException failure = null;
+  private boolean closed = false;
+
+  // the following is only used with line numbers
+  private int nextLineNumber = 0;
+  // the last sent lines, only accessed by the sending thread
+  private final LinkedList<Sent> history = new LinkedList<Sent>();
+  // lines to send again before any new line
+  private final LinkedList<String> replay = new LinkedList<String>();
+  // line number requested by the controller, -1 if none
+  private int resendRequest = -1;
+  // incremented whenever lines are sent again. Lines of an older generation
+  // were already in flight when the controller rejected a line, so their
+  // rejection does not need another resend.
+  private int generation = 0;
+
+  /**
+   * @param out connection to the controller
+   * @param lineEnd line end which is appended to every line
+   * @param capacity size of the receive buffer of the controller
+   * @param countBytes true if the capacity is in bytes, false if it is
+   * in lines
+   */
+  GcodeStreamer(PrintStream out, String lineEnd, int capacity, boolean countBytes)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("The receive buffer size has to be positive");
+    }
+    this.out = out;
+    this.lineEnd = lineEnd;
+    this.capacity = capacity;
+    this.countBytes = countBytes;
+  }
+
+  /**
+   * Reads the next non empty response of the controller, or returns null
+   * at the end of the connection. Called on the reader thread only.
+   */
+  abstract String readResponse() throws IOException;
+
+  int getCapacity()
+  {
+    return capacity;
+  }
+
+  boolean isCountingBytes()
+  {
+    return countBytes;
+  }
+
+  boolean isLineNumbers()
+  {
+    return lineNumbers;
+  }
+
+  /**
+   * Enables line numbers and checksums. Has to be called before the first
+   * line is sent, which is then preceded by an M110 resetting the line
+   * number of the controller.
+   */
+  void setLineNumbers(boolean lineNumbers)
+  {
+    this.lineNumbers = lineNumbers;
+  }
+
+  /**
+   * Returns the number of bytes or lines which have been sent but not
+   * answered
+   */
+  synchronized int getUsed()
+  {
+    return used;
+  }
+
+  /**
+   * Returns the checksum of a line as expected by RepRap firmwares: the
+   * exclusive or of all its bytes
+   */
+  static int checksum(String line)
+  {
+    int result = 0;
+    for (int i = 0; i < line.length(); i++)
+    {
+      result ^= line.charAt(i) & 0xFF;
+    }
+    return result;
+  }
+
+  /**
+   * Sends one line without line end. Blocks while the receive buffer of
+   * the controller has no space for it.
+   * @throws IOException if the line can never fit into the buffer, if
+   * the controller answered an earlier line with an error or if the
+   * connection failed
+   */
+  void send(String line) throws IOException
+  {
+    if (!lineNumbers)
+    {
+      transmit(line + lineEnd);
+      return;
+    }
+    if (nextLineNumber == 0)
+    {
+      transmitNumbered("M110 N0");
+    }
+    //the firmware ignores everything after a comment, including the checksum
+    int comment = line.indexOf(';');
+    String code = (comment >= 0 ? line.substring(0, comment) : line).trim();
+    if (code.length() > 0)
+    {
+      transmitNumbered(code);
+    }
+  }
+
+  private void transmitNumbered(String code) throws IOException
+  {
+    int number = nextLineNumber++;
+    String framed = "N" + number + " " + code;
+    String data = framed + "*" + checksum(framed) + lineEnd;
+    history.add(new Sent(number, data));
+    if (history.size() > HISTORY_LINES)
+    {
+      history.removeFirst();
+    }
+    transmit(data);
+  }
+
+  private int cost(String data)
+  {
+    return countBytes ? data.length() : 1;
+  }
+
+  private void transmit(String data) throws IOException
+  {
+    if (cost(data) > capacity)
+    {
+      throw new IOException("The line '"+data.trim()+"' is longer than the receive buffer of "+capacity+" bytes");
+    }
+    String next;
+    do
+    {
+      synchronized (this)
+      {
+        next = takeNext(data);
+      }
+      write(next == null ? data : next);
+    }
+    while (next != null);
+  }
+
+  /**
+   * Waits until every line has been answered and stops the reader
+   * @throws IOException if a line has been answered with an error
+   */
+  void finish() throws IOException
+  {
+    try
+    {
+      while (true)
+      {
+        String next;
+        synchronized (this)
+        {
+          next = takeNext(null);
+        }
+        if (next == null)
+        {
+          break;
+        }
+        write(next);
+      }
+    }
+    finally
+    {
+      close();
+    }
+  }
+
+  /**
+   * Stops the reader without waiting for outstanding responses
+   */
+  synchronized void close()
+  {
+    closed = true;
+    notifyAll();
+  }
+
+  private void write(String data) throws IOException
+  {
+    out.print(data);
+    out.flush();
+    if (out.checkError())
+    {
+      throw new IOException("Could not send '"+data.trim()+"'");
+    }
+  }
+
+  /**
+   * Waits until the next line fits into the buffer of the controller and
+   * accounts for it. Lines requested again by the controller come first.
+   * Checks the cancellation token of the calling thread while waiting.
+   * @param data the new line to send, or null to wait until every line
+   * has been answered
+   * @return a line to send again, after which takeNext has to be called
+   * again, or null if data can be sent now (or, if data is null, if every
+   * line has been answered)
+   */
+  private String takeNext(String data) throws IOException
+  {
+    if (reader == null)
+    {
+      reader = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          readResponses();
+        }
+      }, "G-code response reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+    CancellationToken token = CancellationToken.current();
+    while (true)
+    {
+      if (failure != null)
+      {
+        throw failure;
+      }
+      token.throwIfCancelled();
+      if (resendRequest >= 0)
+      {
+        startReplay();
+      }
+      String line = replay.isEmpty() ? data : replay.getFirst();
+      if (line == null)
+      {
+        if (used == 0)
+        {
+          return null;
+        }
+      }
+      else if (used + cost(line) <= capacity)
+      {
+        pending.add(new Pending(line, cost(line), generation));
+        used += cost(line);
+        //wake the reader, which only reads while lines are pending
+        notifyAll();
+        return replay.isEmpty() ? null : replay.removeFirst();
+      }
+      try
+      {
+        wait(100);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the lasercutter");
+      }
+    }
+  }
+
+  private void startReplay() throws IOException
+  {
+    int from = resendRequest;
+    resendRequest = -1;
+    generation++;
+    replay.clear();
+    if (history.isEmpty() || history.getFirst().number > from)
+    {
+      failure = new IOException("The lasercutter requested line "+from+", which can not be sent again");
+      throw failure;
+    }
+    for (Sent s : history)
+    {
+      if (s.number >= from)
+      {
+        replay.add(s.data);
+      }
+    }
+  }
+
+  /**
+   * Returns the line number of a resend request, or -1 if the response
+   * is none
+   */
+  static int parseResendRequest(String response)
+  {
+    String rest;
+    if (response.startsWith("Resend:"))
+    {
+      rest = response.substring("Resend:".length());
+    }
+    else if (response.startsWith("rs "))
+    {
+      rest = response.substring("rs ".length());
+    }
+    else
+    {
+      return -1;
+    }
+    int start = 0;
+    while (start < rest.length() && !Character.isDigit(rest.charAt(start)))
+    {
+      start++;
+    }
+    int end = start;
+    while (end < rest.length() && Character.isDigit(rest.charAt(end)))
+    {
+      end++;
+    }
+    return end > start ? Integer.parseInt(rest.substring(start, end)) : -1;
+  }
+
+  /**
+   * Returns true for the errors about corrupted lines which are followed
+   * by a resend request
+   */
+  private static boolean isTransmissionError(String response)
+  {
+    String lower = response.toLowerCase();
+    return lower.contains("checksum") || lower.contains("line number") || lower.contains("last line");
+  }
+
+  private void readResponses()
+  {
+    while (true)
+    {
+      synchronized (this)
+      {
+        //never read responses which do not belong to streamed lines
+        while (!closed && pending.isEmpty())
+        {
+          try
+          {
+            wait();
+          }
+          catch (InterruptedException e)
+          {
+            return;
+          }
+        }
+        if (closed)
+        {
+          return;
+        }
+      }
+      String response;
+      try
+      {
+        response = readResponse();
+      }
+      catch (IOException e)
+      {
+        fail(e);
+        return;
+      }
+      if (response == null)
+      {
+        fail(new IOException("The connection to the lasercutter has been closed"));
+        return;
+      }
+      response = response.trim();
+      if ("ok".equals(response) || response.startsWith("ok "))
+      {
+        acknowledge(null);
+      }
+      else if (lineNumbers && parseResendRequest(response) >= 0)
+      {
+        requestResend(parseResendRequest(response));
+      }
+      else if (lineNumbers && isTransmissionError(response))
+      {
+        //the resend request and the 'ok' for the line follow
+      }
+      else if (response.toLowerCase().startsWith("error"))
+      {
+        acknowledge(response);
+      }
+      else if (response.startsWith("ALARM") || response.startsWith("!!"))
+      {
+        fail(new IOException("Lasercutter reported '"+response+"'"));
+        return;
+      }
+      //anything else, e.g. status reports and messages, is not an answer
+    }
+  }
+
+  /**
+   * Called for a resend request, which belongs to the oldest pending line
+   */
+  private synchronized void requestResend(int number)
+  {
+    Pending head = pending.peek();
+    //lines sent before the last replay are expected to be rejected
+    if (head != null && head.generation == generation && resendRequest < 0)
+    {
+      resendRequest = number;
+      notifyAll();
+    }
+  }
+
+  private synchronized void acknowledge(String error)
+  {
+    Pending p = pending.poll();
+    if (p == null)
+    {
+      return;
+    }
+    used -= p.cost;
+    if (error != null && failure == null)
+    {
+      failure = new IOException("Lasercutter responded '"+error+"' to '"+p.line.trim()+"'");
+    }
+    notifyAll();
+  }
+
+  private synchronized void fail(IOException e)
+  {
+    if (failure == null)
+    {
+      failure = e;
+    }
+    notifyAll();
+  }
+}
@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.drivers;
 
 import com.t_oster.liblasercut.*;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.utils.RasterIslandSegmenter;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -34,6 +35,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import purejavacomm.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import net.sf.corn.httpclient.HttpClient;
 import net.sf.corn.httpclient.HttpResponse;
 
@@ -71,6 +73,16 @@ public class GenericGcodeDriver extends LaserCutter {
   protected static final String SETTING_SPINDLE_MAX = "S value for 100% laser power";
   protected static final String SETTING_UPLOAD_METHOD = "Upload method";
   protected static final String SETTING_RASTER_PADDING = "Extra padding at ends of raster scanlines (mm)";
+  protected static final String SETTING_AUTO_RASTER_AXIS = "Raster along the faster axis (X or Y)";
+  protected static final String SETTING_RASTER_SKIP_GAPS = "Rapid over white gaps inside raster lines";
+  protected static final String SETTING_RASTER_SKIP_GAP_LENGTH = "Minimum white gap for rapids (mm, 0 = automatic)";
+  protected static final String SETTING_SPLIT_RASTER_ISLANDS = "Engrave separate raster islands one by one";
+  protected static final String SETTING_MERGE_RASTER_PARTS = "Merge neighbouring raster parts into one sweep";
+  protected static final String SETTING_RASTER_GREY_LEVELS = "Greyscale raster power levels (0 = unlimited)";
+  protected static final String SETTING_RASTER_DIFFUSE_GREY_LEVELS = "Diffuse the error between greyscale levels";
+  protected static final String SETTING_RASTER_GREY_TOLERANCE = "Merge greyscale runs differing by up to (grey values)";
+  protected static final String SETTING_MAX_LINES_IN_FLIGHT = "Max. lines sent ahead of 'ok' (1 = wait for each)";
+  protected static final String SETTING_LINE_NUMBERS = "Send line numbers and checksums";
 
   protected static Locale FORMAT_LOCALE = Locale.US;
 
@@ -382,6 +394,171 @@ public class GenericGcodeDriver extends LaserCutter {
     this.useBidirectionalRastering = useBidirectionalRastering;
   }
 
+  /**
+   * When rastering, whether to scan along the Y axis instead of the X axis
+   * when the estimated time is shorter, e.g. for tall, thin images
+   */
+  protected boolean autoRasterAxis = false;
+
+  public boolean getAutoRasterAxis()
+  {
+    return autoRasterAxis;
+  }
+
+  public void setAutoRasterAxis(boolean autoRasterAxis)
+  {
+    this.autoRasterAxis = autoRasterAxis;
+  }
+
+  /**
+   * When rastering, whether to end a line in front of a long white gap and
+   * move over it at travel speed instead of traversing it at engrave speed
+   */
+  protected boolean skipRasterGaps = false;
+
+  public boolean getSkipRasterGaps()
+  {
+    return skipRasterGaps;
+  }
+
+  public void setSkipRasterGaps(boolean skipRasterGaps)
+  {
+    this.skipRasterGaps = skipRasterGaps;
+  }
+
+  /**
+   * Minimum length of a white gap to move over at travel speed in mm.
+   * If 0, it is computed from the engrave and travel speed.
+   */
+  protected double skipRasterGapLength = 0;
+
+  public double getSkipRasterGapLength()
+  {
+    return skipRasterGapLength;
+  }
+
+  public void setSkipRasterGapLength(double skipRasterGapLength)
+  {
+    this.skipRasterGapLength = skipRasterGapLength;
+  }
+
+  /**
+   * When rastering, whether to engrave separated areas of an image one after
+   * another instead of sweeping over the empty space between them
+   */
+  protected boolean splitRasterIslands = false;
+
+  public boolean getSplitRasterIslands()
+  {
+    return splitRasterIslands;
+  }
+
+  public void setSplitRasterIslands(boolean splitRasterIslands)
+  {
+    this.splitRasterIslands = splitRasterIslands;
+  }
+
+  /**
+   * Whether consecutive raster parts with the same settings which overlap
+   * vertically are engraved together
+   */
+  protected boolean mergeRasterParts = false;
+
+  public boolean getMergeRasterParts()
+  {
+    return mergeRasterParts;
+  }
+
+  public void setMergeRasterParts(boolean mergeRasterParts)
+  {
+    this.mergeRasterParts = mergeRasterParts;
+  }
+
+  /**
+   * Number of grey levels greyscale raster parts are reduced to, or 0 to
+   * use the image as it is
+   */
+  protected int rasterGreyLevels = 0;
+
+  public int getRasterGreyLevels()
+  {
+    return rasterGreyLevels;
+  }
+
+  public void setRasterGreyLevels(int rasterGreyLevels)
+  {
+    this.rasterGreyLevels = rasterGreyLevels;
+  }
+
+  /**
+   * Whether the error of the grey level reduction is diffused along the
+   * raster lines. A Boolean, because xstream leaves it null instead of
+   * true when it is missing from an older settings file.
+   */
+  protected Boolean diffuseRasterGreyLevels = true;
+
+  public boolean getDiffuseRasterGreyLevels()
+  {
+    return diffuseRasterGreyLevels == null || diffuseRasterGreyLevels;
+  }
+
+  public void setDiffuseRasterGreyLevels(boolean diffuseRasterGreyLevels)
+  {
+    this.diffuseRasterGreyLevels = diffuseRasterGreyLevels;
+  }
+
+  /**
+   * Neighbouring pixels of greyscale raster parts whose grey values differ
+   * by at most this are engraved as one run
+   */
+  protected int rasterGreyTolerance = 0;
+
+  public int getRasterGreyTolerance()
+  {
+    return rasterGreyTolerance;
+  }
+
+  public void setRasterGreyTolerance(int rasterGreyTolerance)
+  {
+    this.rasterGreyTolerance = rasterGreyTolerance;
+  }
+
+  /**
+   * Number of lines which are sent before the 'ok' of the first of them
+   * has arrived, if waitForOKafterEachLine is set. Values above 1 hide
+   * the round trip time, but must not exceed the command buffer of the
+   * firmware. 0 and 1 wait for the 'ok' of every line.
+   */
+  protected int maxLinesInFlight = 1;
+
+  public int getMaxLinesInFlight()
+  {
+    return maxLinesInFlight;
+  }
+
+  public void setMaxLinesInFlight(int maxLinesInFlight)
+  {
+    this.maxLinesInFlight = maxLinesInFlight;
+  }
+
+  /**
+   * If set, lines are sent as "N<number> <line>*<checksum>" and lines
+   * requested again by the firmware with "Resend: <number>" are repeated.
+   * This allows higher baud rates on links which corrupt a line now and
+   * then. Only used if waitForOKafterEachLine is set.
+   */
+  protected boolean lineNumbers = false;
+
+  public boolean isLineNumbers()
+  {
+    return lineNumbers;
+  }
+
+  public void setLineNumbers(boolean lineNumbers)
+  {
+    this.lineNumbers = lineNumbers;
+  }
+
    /*
    * Value to use for feedrate when laser is 100% on.
    * Varies between firmwares... 1, 100, 255, 10000, etc.
@@ -440,6 +617,76 @@ public class GenericGcodeDriver extends LaserCutter {
       }
     }
   }
+  /**
+   * Writes the given raster part directly as G-code, without converting
+   * it into a VectorPart first. With the default settings the output is the
+   * same as writing the result of convertRasterizableToVectorPart with
+   * writeVectorGCode.
+   * Parts which have to be read from top to bottom (see
+   * RasterizableJobPart.requiresSequentialReads) are always rastered row by
+   * row in one pass, without splitting islands or choosing the axis.
+   */
+  protected void writeRasterizableGCode(RasterizableJobPart rp, double resolution) throws IOException {
+    if (getSplitRasterIslands() && !rp.requiresSequentialReads())
+    {
+      double engraveSpeed = max_speed * rp.getPowerSpeedFocusPropertyForColor(0).getSpeed() / 100.0;
+      RasterIslandSegmenter.Segmentation islands = new RasterIslandSegmenter().segment(rp, getRasterPadding(), engraveSpeed, getTravel_speed());
+      if (islands.getTimeSaved() > 0)
+      {
+        for (RasterizableJobPart island : islands.getParts())
+        {
+          writeRasterScanlines(island, resolution);
+        }
+        return;
+      }
+    }
+    writeRasterScanlines(rp, resolution);
+  }
+
+  private void writeRasterScanlines(RasterizableJobPart rp, double resolution) throws IOException {
+    boolean alongColumns = getAutoRasterAxis() && !rp.requiresSequentialReads()
+      && rp.isColumnScanShorter((int) Math.round(Util.mm2px(getRasterPadding(), resolution)));
+    double gap = Double.POSITIVE_INFINITY;
+    if (getSkipRasterGaps())
+    {
+      double engraveSpeed = max_speed * rp.getPowerSpeedFocusPropertyForColor(0).getSpeed() / 100.0;
+      gap = getSkipRasterGapLength() > 0 ? getSkipRasterGapLength()
+        : RasterizableJobPart.getSkipGapThreshold(getRasterPadding(), engraveSpeed, getTravel_speed());
+    }
+    if (rp instanceof Raster3dPart && (getRasterGreyLevels() > 0 || getRasterGreyTolerance() > 0))
+    {
+      int levels = getRasterGreyLevels() > 0 ? Math.max(2, getRasterGreyLevels()) : 256;
+      rp = ((Raster3dPart) rp).quantized(levels, getDiffuseRasterGreyLevels(), getRasterGreyTolerance(), alongColumns);
+    }
+    rp.feedScanlines(new GcodeScanlineEmitter(resolution), getRasterPadding(), gap, resolution, getUseBidirectionalRastering(), alongColumns);
+  }
+
+  /**
+   * Emits every scanline run as move and line commands
+   */
+  protected class GcodeScanlineEmitter implements ScanlineEmitter {
+
+    private final double resolution;
+
+    public GcodeScanlineEmitter(double resolution) {
+      this.resolution = resolution;
+    }
+
+    public void startLine(int x, int y) throws IOException {
+      move(out, x, y, resolution);
+    }
+
+    public void run(FloatPowerSpeedFocusProperty p, int x, int y) throws IOException {
+      setPower(p.getPower());
+      setSpeed(p.getSpeed());
+      setFocus(out, p.getFocus());
+      line(out, x, y, resolution);
+    }
+
+    public void endLine() throws IOException {
+    }
+  }
+
   protected double currentPower = -1;
   protected double currentSpeed = -1;
   private double nextPower = -1;
@@ -520,9 +767,40 @@ public class GenericGcodeDriver extends LaserCutter {
   private Socket socket;
   private CommPort port;
   private CommPortIdentifier portIdentifier;
+  //streams the lines of the current job, null while lines are sent one by one
+  transient GcodeStreamer streamer = null;
+
+  /**
+   * Returns a streamer for the lines of a job on the current connection,
+   * or null to send them one by one. Called after connecting.
+   */
+  GcodeStreamer createStreamer()
+  {
+    //only on a real connection which answers with 'ok'
+    if ((getMaxLinesInFlight() > 1 || isLineNumbers()) && isWaitForOKafterEachLine() && in != null)
+    {
+      GcodeStreamer result = new GcodeStreamer(out, LINEEND(), Math.max(1, getMaxLinesInFlight()), false)
+      {
+        @Override
+        String readResponse() throws IOException
+        {
+          return waitForLine();
+        }
+      };
+      result.setLineNumbers(isLineNumbers());
+      return result;
+    }
+    return null;
+  }
 
   protected void sendLine(String text, Object... parameters) throws IOException
   {
+    CancellationToken.current().throwIfCancelled();
+    if (streamer != null)
+    {
+      streamer.send(String.format(FORMAT_LOCALE, text, parameters));
+      return;
+    }
     out.format(FORMAT_LOCALE, text+LINEEND(), parameters);
     out.flush();
     if (isWaitForOKafterEachLine())
@@ -785,6 +1063,61 @@ public class GenericGcodeDriver extends LaserCutter {
 
   }
 
+  /**
+   * Closes the connection of a cancelled job. Unlike disconnect, a buffered
+   * job is discarded instead of uploaded.
+   */
+  private void abortConnection()
+  {
+    try
+    {
+      if (in != null)
+      {
+        in.close();
+      }
+      if (out != null)
+      {
+        out.close();
+      }
+      if (this.socket != null)
+      {
+        socket.close();
+      }
+      else if (this.port != null)
+      {
+        this.port.close();
+      }
+    }
+    catch (IOException e)
+    {
+      //the job is cancelled anyway
+    }
+    catch (IllegalStateException e)
+    {
+      //the serial port has already been closed by the cancel listener
+    }
+    finally
+    {
+      socket = null;
+      port = null;
+    }
+  }
+
+  /**
+   * Writes one part of a job as G-code. Used by sendJob and saveJob.
+   */
+  protected void writeJobPart(JobPart p) throws IOException
+  {
+    if (p instanceof Raster3dPart || p instanceof RasterPart)
+    {
+      writeRasterizableGCode((RasterizableJobPart) p, p.getDPI());
+    }
+    else if (p instanceof VectorPart)
+    {
+      writeVectorGCode((VectorPart) p, p.getDPI());
+    }
+  }
+
   @Override
   public void sendJob(LaserJob job, ProgressListener pl, List<String> warnings) throws IllegalJobException, Exception {
     pl.progressChanged(this, 0);
@@ -795,37 +1128,83 @@ public class GenericGcodeDriver extends LaserCutter {
     checkJob(job);
     this.jobName = job.getName()+".gcode";
     job.applyStartPoint();
+    if (getMergeRasterParts())
+    {
+      job.mergeRasterParts();
+    }
     pl.taskChanged(this, "connecting...");
     connect(pl);
+    CancellationToken token = CancellationToken.current();
+    //unblocks a thread waiting for a response of the lasercutter
+    Runnable closeSocket = new Runnable()
+    {
+      public void run()
+      {
+        Socket s = socket;
+        CommPort p = port;
+        try
+        {
+          if (s != null)
+          {
+            s.close();
+          }
+          else if (p != null)
+          {
+            p.close();
+          }
+        }
+        catch (IOException e)
+        {
+        }
+      }
+    };
+    token.addCancelListener(closeSocket);
     pl.taskChanged(this, "sending");
     try {
+      streamer = createStreamer();
       writeInitializationCode();
       pl.progressChanged(this, 20);
       int i = 0;
       int max = job.getParts().size();
       for (JobPart p : job.getParts())
       {
-        if (p instanceof Raster3dPart || p instanceof RasterPart)
-        {
-          p = convertRasterizableToVectorPart((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-        }
-        if (p instanceof VectorPart)
-        {
-          //TODO: in direct mode use progress listener to indicate progress
-          //of individual job
-          writeVectorGCode((VectorPart) p, p.getDPI());
-        }
+        //TODO: in direct mode use progress listener to indicate progress
+        //of individual job
+        writeJobPart(p);
         i++;
         pl.progressChanged(this, 20 + (int) (i*(double) 60/max));
       }
       writeShutdownCode();
+      if (streamer != null)
+      {
+        pl.taskChanged(this, "waiting for the lasercutter");
+        streamer.finish();
+      }
       disconnect(job.getName()+".gcode");
     }
+    catch (CancellationException e) {
+      abortConnection();
+      throw e;
+    }
     catch (IOException e) {
+      if (token.isCancelled())
+      {
+        //the socket has been closed by the cancel listener
+        abortConnection();
+        throw new CancellationException("Job cancelled");
+      }
       pl.taskChanged(this, "disconnecting");
       disconnect(this.jobName);
       throw e;
     }
+    finally {
+      token.removeCancelListener(closeSocket);
+      if (streamer != null)
+      {
+        streamer.close();
+        streamer = null;
+      }
+    }
     pl.taskChanged(this, "sent.");
     pl.progressChanged(this, 100);
   }
@@ -837,6 +1216,10 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
 
   pl.taskChanged(this, "checking job");
 	checkJob(job);
+	if (getMergeRasterParts())
+	{
+	  job.mergeRasterParts();
+	}
 
 	this.out = fileOutputStream;
 
@@ -849,14 +1232,7 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
   int i = 0;
 	for (JobPart p : job.getParts())
 	{
-		if (p instanceof Raster3dPart || p instanceof RasterPart)
-		{
-			p = convertRasterizableToVectorPart((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-		}
-    		if (p instanceof VectorPart)
-		{
-			writeVectorGCode((VectorPart) p, p.getDPI());
-		}
+		writeJobPart(p);
     i++;
     pl.progressChanged(this, 20 + (int) (i*(double) 60/max));
 	}
@@ -970,6 +1346,16 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
     SETTING_FILE_EXPORT_PATH,
     SETTING_USE_BIDIRECTIONAL_RASTERING,
     SETTING_RASTER_PADDING,
+    SETTING_AUTO_RASTER_AXIS,
+    SETTING_RASTER_SKIP_GAPS,
+    SETTING_RASTER_SKIP_GAP_LENGTH,
+    SETTING_SPLIT_RASTER_ISLANDS,
+    SETTING_MERGE_RASTER_PARTS,
+    SETTING_RASTER_GREY_LEVELS,
+    SETTING_RASTER_DIFFUSE_GREY_LEVELS,
+    SETTING_RASTER_GREY_TOLERANCE,
+    SETTING_MAX_LINES_IN_FLIGHT,
+    SETTING_LINE_NUMBERS,
   };
 
   @Override
@@ -1031,6 +1417,26 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
       return this.getUploadMethod();
     } else if (SETTING_RASTER_PADDING.equals(attribute)) {
       return this.getRasterPadding();
+    } else if (SETTING_AUTO_RASTER_AXIS.equals(attribute)) {
+      return this.getAutoRasterAxis();
+    } else if (SETTING_RASTER_SKIP_GAPS.equals(attribute)) {
+      return this.getSkipRasterGaps();
+    } else if (SETTING_RASTER_SKIP_GAP_LENGTH.equals(attribute)) {
+      return this.getSkipRasterGapLength();
+    } else if (SETTING_SPLIT_RASTER_ISLANDS.equals(attribute)) {
+      return this.getSplitRasterIslands();
+    } else if (SETTING_MERGE_RASTER_PARTS.equals(attribute)) {
+      return this.getMergeRasterParts();
+    } else if (SETTING_RASTER_GREY_LEVELS.equals(attribute)) {
+      return this.getRasterGreyLevels();
+    } else if (SETTING_RASTER_DIFFUSE_GREY_LEVELS.equals(attribute)) {
+      return this.getDiffuseRasterGreyLevels();
+    } else if (SETTING_RASTER_GREY_TOLERANCE.equals(attribute)) {
+      return this.getRasterGreyTolerance();
+    } else if (SETTING_MAX_LINES_IN_FLIGHT.equals(attribute)) {
+      return this.getMaxLinesInFlight();
+    } else if (SETTING_LINE_NUMBERS.equals(attribute)) {
+      return this.isLineNumbers();
     }
 
     return null;
@@ -1090,6 +1496,26 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
       this.setUploadMethod(value);
     } else if (SETTING_RASTER_PADDING.equals(attribute)) {
       this.setRasterPadding(Math.abs((Double)value));
+    } else if (SETTING_AUTO_RASTER_AXIS.equals(attribute)) {
+      this.setAutoRasterAxis((Boolean) value);
+    } else if (SETTING_RASTER_SKIP_GAPS.equals(attribute)) {
+      this.setSkipRasterGaps((Boolean) value);
+    } else if (SETTING_RASTER_SKIP_GAP_LENGTH.equals(attribute)) {
+      this.setSkipRasterGapLength(Math.abs((Double) value));
+    } else if (SETTING_SPLIT_RASTER_ISLANDS.equals(attribute)) {
+      this.setSplitRasterIslands((Boolean) value);
+    } else if (SETTING_MERGE_RASTER_PARTS.equals(attribute)) {
+      this.setMergeRasterParts((Boolean) value);
+    } else if (SETTING_RASTER_GREY_LEVELS.equals(attribute)) {
+      this.setRasterGreyLevels(Math.min(256, Math.abs((Integer) value)));
+    } else if (SETTING_RASTER_DIFFUSE_GREY_LEVELS.equals(attribute)) {
+      this.setDiffuseRasterGreyLevels((Boolean) value);
+    } else if (SETTING_RASTER_GREY_TOLERANCE.equals(attribute)) {
+      this.setRasterGreyTolerance(Math.abs((Integer) value));
+    } else if (SETTING_MAX_LINES_IN_FLIGHT.equals(attribute)) {
+      this.setMaxLinesInFlight(Math.max(1, (Integer) value));
+    } else if (SETTING_LINE_NUMBERS.equals(attribute)) {
+      this.setLineNumbers((Boolean) value);
     }
   }
 
@@ -1102,6 +1528,8 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressL
     // added field spindleMax, needs to be set to 1.0 by default
     // but xstream initializes it to 0.0 when it is missing from XML
     if (this.spindleMax <= 0.0) this.spindleMax = 1.0;
+    // added field diffuseRasterGreyLevels, which defaults to true
+    if (this.diffuseRasterGreyLevels == null) this.diffuseRasterGreyLevels = true;
   }
 
   @Override
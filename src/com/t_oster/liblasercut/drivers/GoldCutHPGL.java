@@ -239,21 +239,16 @@ public class GoldCutHPGL extends LaserCutter {
       lineStart.y += line;
       rp.getRasterLine(line, bytes);
       //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0) {
-        bytes.remove(0);
-        lineStart.x += 1;
-      }
+      lineStart.x += bytes.trimLeading((byte) 0);
       //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-        bytes.remove(bytes.size() - 1);
-      }
+      bytes.trimTrailing((byte) 0);
       if (bytes.size() > 0) {
         if (dirRight) {
           //move to the first nonempyt point of the line
           move(out, lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
+          byte old = bytes.getByte(0);
           for (int pix = 0; pix < bytes.size(); pix++) {
-            if (bytes.get(pix) != old) {
+            if (bytes.getByte(pix) != old) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -261,18 +256,18 @@ public class GoldCutHPGL extends LaserCutter {
                 line(out, lineStart.x + pix - 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes.getByte(pix);
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes.getByte(bytes.size() - 1)) / 255);
           line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
         } else {
           //move to the last nonempty point of the line
           move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
+          byte old = bytes.getByte(bytes.size() - 1);
           for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-            if (bytes.get(pix) != old || pix == 0) {
+            if (bytes.getByte(pix) != old || pix == 0) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -280,11 +275,11 @@ public class GoldCutHPGL extends LaserCutter {
                 line(out, lineStart.x + pix + 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes.getByte(pix);
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes.getByte(0)) / 255);
           line(out, lineStart.x, lineStart.y, resolution);
         }
       }
@@ -304,33 +299,31 @@ public class GoldCutHPGL extends LaserCutter {
     for (int line = 0; line < rp.getRasterHeight(); line++) {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = new LinkedList<Byte>();
+      ByteArrayList bytes = new ByteArrayList(rp.getRasterWidth());
       boolean lookForStart = true;
       for (int x = 0; x < rp.getRasterWidth(); x++) {
         if (lookForStart) {
           if (rp.isBlack(x, line)) {
             lookForStart = false;
-            bytes.add((byte) 255);
+            bytes.addByte((byte) 255);
           } else {
             lineStart.x += 1;
           }
         } else {
-          bytes.add(rp.isBlack(x, line) ? (byte) 255 : (byte) 0);
+          bytes.addByte(rp.isBlack(x, line) ? (byte) 255 : (byte) 0);
         }
       }
       //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-        bytes.remove(bytes.size() - 1);
-      }
+      bytes.trimTrailing((byte) 0);
       if (bytes.size() > 0) {
         if (dirRight) {
           //add some space to the left
           move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the first nonempyt point of the line
           move(out, lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
+          byte old = bytes.getByte(0);
           for (int pix = 0; pix < bytes.size(); pix++) {
-            if (bytes.get(pix) != old) {
+            if (bytes.getByte(pix) != old) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -338,11 +331,11 @@ public class GoldCutHPGL extends LaserCutter {
                 line(out, lineStart.x + pix - 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes.getByte(pix);
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes.getByte(bytes.size() - 1)) / 255);
           line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
           //add some space to the right
           move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
@@ -351,9 +344,9 @@ public class GoldCutHPGL extends LaserCutter {
           move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the last nonempty point of the line
           move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
+          byte old = bytes.getByte(bytes.size() - 1);
           for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-            if (bytes.get(pix) != old || pix == 0) {
+            if (bytes.getByte(pix) != old || pix == 0) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -361,11 +354,11 @@ public class GoldCutHPGL extends LaserCutter {
                 line(out, lineStart.x + pix + 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes.getByte(pix);
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes.getByte(0)) / 255);
           line(out, lineStart.x, lineStart.y, resolution);
           //add some space to the left
           move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
@@ -18,6 +18,7 @@
  **/
 package com.t_oster.liblasercut.drivers;
 
+import com.t_oster.liblasercut.CancellationToken;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.platform.Util;
 import java.io.IOException;
@@ -56,6 +57,13 @@ public class Grbl extends GenericGcodeDriver
   }
   
   protected static final String SETTING_AUTO_HOME = "Automatically home laser cutter";
+  protected static final String SETTING_CHARACTER_COUNTING = "Stream with character counting";
+  protected static final String SETTING_RX_BUFFER_SIZE = "Grbl receive buffer size (bytes)";
+  
+  /**
+   * Size of the serial receive buffer of a stock Grbl
+   */
+  protected static final int DEFAULT_RX_BUFFER_SIZE = 127;
   
   @Override
   public String[] getPropertyKeys()
@@ -69,7 +77,13 @@ public class Grbl extends GenericGcodeDriver
     result.remove(GenericGcodeDriver.SETTING_WAIT_FOR_OK);
     result.remove(GenericGcodeDriver.SETTING_TRAVEL_SPEED);
     result.remove(GenericGcodeDriver.SETTING_LINEEND);
+    // a window of lines can overflow the receive buffer, which is limited in bytes
+    result.remove(GenericGcodeDriver.SETTING_MAX_LINES_IN_FLIGHT);
+    // Grbl does not support checksums
+    result.remove(GenericGcodeDriver.SETTING_LINE_NUMBERS);
     result.add(SETTING_AUTO_HOME);
+    result.add(SETTING_CHARACTER_COUNTING);
+    result.add(SETTING_RX_BUFFER_SIZE);
     return result.toArray(new String[0]);
   }
   
@@ -78,6 +92,12 @@ public class Grbl extends GenericGcodeDriver
     if (SETTING_AUTO_HOME.equals(attribute)) {
       return this.getAutoHome();
     }
+    else if (SETTING_CHARACTER_COUNTING.equals(attribute)) {
+      return this.isCharacterCounting();
+    }
+    else if (SETTING_RX_BUFFER_SIZE.equals(attribute)) {
+      return this.getRxBufferSize();
+    }
     else {
       return super.getProperty(attribute);
     }
@@ -88,6 +108,12 @@ public class Grbl extends GenericGcodeDriver
     if (SETTING_AUTO_HOME.equals(attribute)) {
       this.setAutoHome((Boolean) value);
     }
+    else if (SETTING_CHARACTER_COUNTING.equals(attribute)) {
+      this.setCharacterCounting((Boolean) value);
+    }
+    else if (SETTING_RX_BUFFER_SIZE.equals(attribute)) {
+      this.setRxBufferSize((Integer) value);
+    }
     else {
       super.setProperty(attribute, value);
     }
@@ -104,6 +130,64 @@ public class Grbl extends GenericGcodeDriver
   {
     this.autoHome = auto_home;
   }
+  
+  protected boolean characterCounting = false;
+  
+  public boolean isCharacterCounting()
+  {
+    return characterCounting;
+  }
+  
+  /**
+   * If enabled, lines are streamed as long as they fit into the receive
+   * buffer of Grbl, instead of waiting for the 'ok' of every line.
+   * This keeps the planner of Grbl filled on jobs with many short lines.
+   */
+  public void setCharacterCounting(boolean characterCounting)
+  {
+    this.characterCounting = characterCounting;
+  }
+  
+  protected int rxBufferSize = DEFAULT_RX_BUFFER_SIZE;
+  
+  public int getRxBufferSize()
+  {
+    return rxBufferSize;
+  }
+  
+  public void setRxBufferSize(int rxBufferSize)
+  {
+    this.rxBufferSize = rxBufferSize > 0 ? rxBufferSize : DEFAULT_RX_BUFFER_SIZE;
+  }
+  
+  /**
+   * Adjust defaults after deserializing driver from an old version of XML file
+   */
+  @Override
+  protected void setKeysMissingFromDeserialization()
+  {
+    super.setKeysMissingFromDeserialization();
+    // added field rxBufferSize, which xstream initializes to 0
+    if (this.rxBufferSize <= 0) this.rxBufferSize = DEFAULT_RX_BUFFER_SIZE;
+  }
+  
+  @Override
+  GcodeStreamer createStreamer()
+  {
+    //only on a real connection which answers with 'ok'
+    if (isCharacterCounting() && isWaitForOKafterEachLine() && in != null)
+    {
+      return new GcodeStreamer(out, LINEEND(), getRxBufferSize(), true)
+      {
+        @Override
+        String readResponse() throws IOException
+        {
+          return waitForLine();
+        }
+      };
+    }
+    return null;
+  }
 
 
   @Override
@@ -196,6 +280,12 @@ public class Grbl extends GenericGcodeDriver
   @Override
   protected void sendLine(String text, Object... parameters) throws IOException
   {
+    CancellationToken.current().throwIfCancelled();
+    if (streamer != null)
+    {
+      streamer.send(String.format(FORMAT_LOCALE, text.replace(" ", ""), parameters));
+      return;
+    }
     out.format(FORMAT_LOCALE, text.replace(" ", "")+LINEEND(), parameters);
     //TODO: Remove
     System.out.println(String.format(FORMAT_LOCALE, "> "+text+LINEEND(), parameters));
@@ -448,20 +448,21 @@ public class LaosCutter extends LaserCutter
     ByteArrayList bytes = new ByteArrayList(rp.getRasterWidth());
     for (int line = bu ? rp.getRasterHeight()-1 : 0; bu ? line >= 0 : line < rp.getRasterHeight(); line += bu ? -1 : 1 )
     {
+      if (rp.lineIsBlank(line))
+      {
+        if (!prop.isEngraveUnidirectional())
+        {
+          dirRight = !dirRight;
+        }
+        continue;
+      }
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
       rp.getRasterLine(line, bytes);
       //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0)
-      {
-        bytes.remove(0);
-        lineStart.x += 1;
-      }
+      lineStart.x += bytes.trimLeading((byte) 0);
       //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0)
-      {
-        bytes.remove(bytes.size() - 1);
-      }
+      bytes.trimTrailing((byte) 0);
       if (bytes.size() > 0)
       {
         if (dirRight)
@@ -580,20 +581,21 @@ public class LaosCutter extends LaserCutter
     ByteArrayList bytes = new ByteArrayList(rp.getRasterWidth());
     for (int line = bu ? rp.getRasterHeight()-1 : 0; bu ? line >= 0 : line < rp.getRasterHeight(); line += bu ? -1 : 1)
     {
+      if (rp.lineIsBlank(line))
+      {
+        if (!prop.isEngraveUnidirectional())
+        {
+          dirRight = !dirRight;
+        }
+        continue;
+      }
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
       rp.getRasterLine(line, bytes);
       //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0)
-      {
-        lineStart.x += 8;
-        bytes.remove(0);
-      }
+      lineStart.x += 8 * bytes.trimLeading((byte) 0);
       //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size()-1) == 0)
-      {
-        bytes.remove(bytes.size()-1);
-      }
+      bytes.trimTrailing((byte) 0);
       if (bytes.size() > 0)
       {
         //add space on the left side
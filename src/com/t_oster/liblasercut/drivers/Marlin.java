@@ -18,14 +18,11 @@
  **/
 package com.t_oster.liblasercut.drivers;
 
-import com.t_oster.liblasercut.IllegalJobException;
 import com.t_oster.liblasercut.JobPart;
-import com.t_oster.liblasercut.LaserJob;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.Raster3dPart;
 import com.t_oster.liblasercut.RasterPart;
 import com.t_oster.liblasercut.RasterizableJobPart;
-import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.drivers.GenericGcodeDriver;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
@@ -312,93 +309,17 @@ public class Marlin extends GenericGcodeDriver {
    
   
   
- @Override
-  public void sendJob(LaserJob job, ProgressListener pl, List<String> warnings) throws IllegalJobException, Exception {
-    pl.progressChanged(this, 0);
-    this.currentPower = -1;
-    this.currentSpeed = -1;
-
-    pl.taskChanged(this, "checking job");
-    checkJob(job);
-    this.jobName = job.getName()+".gcode";
-    job.applyStartPoint();
-    pl.taskChanged(this, "connecting...");
-    connect(pl);
-    pl.taskChanged(this, "sending");
-    try {
-      writeInitializationCode();
-      pl.progressChanged(this, 20);
-      int i = 0;
-      int max = job.getParts().size();
-      for (JobPart p : job.getParts())
-      {
-        if (p instanceof Raster3dPart || p instanceof RasterPart)
-        {
-          if(this.useG7rastering)
-          {
-            // G7 rastering
-            writeRasterGCode((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-          }
-          else
-          {
-            p = convertRasterizableToVectorPart((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-          }
-        }
-        if (p instanceof VectorPart)
-        {
-          //TODO: in direct mode use progress listener to indicate progress
-          //of individual job
-          writeVectorGCode((VectorPart) p, p.getDPI());
-        }
-        i++;
-        pl.progressChanged(this, 20 + (int) (i*(double) 60/max));
-      }
-      writeShutdownCode();
-      disconnect(job.getName()+".gcode");
-    }
-    catch (IOException e) {
-      pl.taskChanged(this, "disconnecting");
-      disconnect(this.jobName);
-      throw e;
-    }
-    pl.taskChanged(this, "sent.");
-    pl.progressChanged(this, 100);
-  }
   @Override
-  public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job,ProgressListener pl) throws IllegalJobException, Exception {
-    this.currentPower = -1;
-    this.currentSpeed = -1;
-
-    checkJob(job);
-
-    this.out = fileOutputStream;
-
-    boolean wasSetWaitingForOk = isWaitForOKafterEachLine();
-    setWaitForOKafterEachLine( false );
-
-    writeInitializationCode();
-    for (JobPart p : job.getParts())
+  protected void writeJobPart(JobPart p) throws IOException
+  {
+    if (this.useG7rastering && (p instanceof Raster3dPart || p instanceof RasterPart))
     {
-      if (p instanceof Raster3dPart || p instanceof RasterPart)
-      {
-          if(this.useG7rastering)
-          {
-            //G7 rastering
-            writeRasterGCode((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-          }
-          else
-          {
-            p = convertRasterizableToVectorPart((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
-          }
-      }
-      if (p instanceof VectorPart)
-      {
-        writeVectorGCode((VectorPart) p, p.getDPI());
-      }
+      // G7 rastering
+      writeRasterGCode((RasterizableJobPart) p, p.getDPI(), getUseBidirectionalRastering());
+    }
+    else
+    {
+      super.writeJobPart(p);
     }
-    writeShutdownCode();
-    this.out.flush();
-
-    setWaitForOKafterEachLine(wasSetWaitingForOk);
   }
 }
\ No newline at end of file
@@ -26,8 +26,11 @@ import com.t_oster.liblasercut.PowerSpeedFocusFrequencyProperty;
 import com.t_oster.liblasercut.PowerSpeedFocusProperty;
 import com.t_oster.liblasercut.RasterPart;
 import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.dithering.DitheringCache;
+import com.t_oster.liblasercut.dithering.PreviewDitherer;
 import com.t_oster.liblasercut.drivers.EpilogZing;
 import com.t_oster.liblasercut.utils.BufferedImageAdapter;
+import com.t_oster.liblasercut.utils.ImagePipelineRaster;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
 import java.awt.Color;
@@ -49,6 +52,7 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -95,19 +99,16 @@ public class PhotoPrint {
         } catch (NumberFormatException e) {
             error(e.getMessage());
         }
-        int oWidth = (int) Util.mm2px(width, dpi);
-        int oHeight = img.getHeight() * oWidth / img.getWidth();
-        final BufferedImage scaledImg = new BufferedImage(oWidth, oHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = scaledImg.createGraphics();
-        AffineTransform at =
-                AffineTransform.getScaleInstance((double) oWidth / img.getWidth(),
-                (double) oHeight / img.getHeight());
-        g.drawRenderedImage(img, at);
-        final BufferedImage outImg = new BufferedImage(scaledImg.getWidth(), scaledImg.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final int oWidth = (int) Util.mm2px(width, dpi);
+        final int oHeight = img.getHeight() * oWidth / img.getWidth();
+        final BufferedImage srcImg = img;
+        final BufferedImage outImg = new BufferedImage(oWidth, oHeight, BufferedImage.TYPE_INT_RGB);
         final JComboBox cbDa = new JComboBox();
         for (DitherAlgorithm da : BlackWhiteRaster.DitherAlgorithm.values()) {
             cbDa.addItem(da);
         }
+        //going back to settings which have been previewed before does not dither the preview again
+        final DitheringCache cache = new DitheringCache();
         final JPanel prev = new JPanel();
         final JCheckBox cbInvert = new JCheckBox("invert");
         JCheckBox cbCut = new JCheckBox("Cut out the image");
@@ -130,29 +131,53 @@ public class PhotoPrint {
         prev.add(cbCut);
         prev.add(filter);
         prev.add(new JLabel("Width: "+outImg.getWidth()+" Height: "+outImg.getHeight()+ " ("+Util.px2mm(outImg.getWidth(), dpi)+"x"+Util.px2mm(outImg.getHeight(), dpi)+"mm)"));
+        //the preview is dithered at screen resolution in the background and
+        //replaced by the next one when a setting changes
+        final PreviewDitherer[] preview = new PreviewDitherer[1];
+        final PreviewDitherer.Listener previewListener = new PreviewDitherer.Listener() {
+
+            public void previewReady(final PreviewDitherer source, final BlackWhiteRaster bw, final boolean finished) {
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    public void run() {
+                        if (source.isCancelled()) {
+                            return;
+                        }
+                        BufferedImage small = new BufferedImage(bw.getWidth(), bw.getHeight(), BufferedImage.TYPE_INT_RGB);
+                        for (int y = 0; y < bw.getHeight(); y++) {
+                            for (int x = 0; x < bw.getWidth(); x++) {
+                                small.setRGB(x, y, bw.isBlack(x, y) ^ cbInvert.isSelected() ? Color.BLACK.getRGB() : Color.WHITE.getRGB());
+                            }
+                        }
+                        Graphics2D g = buf.createGraphics();
+                        AffineTransform at =
+                                AffineTransform.getScaleInstance((double) source.getWidth() / bw.getWidth(),
+                                (double) source.getWidth() / bw.getWidth());
+                        g.setColor(Color.WHITE);
+                        g.fillRect(0, 0, buf.getWidth(), buf.getHeight());
+                        g.drawRenderedImage(small, at);
+                        lab.setText(finished ? "" : "refining...");
+                        prev.repaint();
+                    }
+                });
+            }
+        };
         final ActionListener list = new ActionListener() {
 
             public void actionPerformed(ActionEvent ae) {
                 lab.setText("dithering...");
                 lab.repaint();
+                if (preview[0] != null) {
+                    preview[0].cancel();
+                }
                 DitherAlgorithm da = (DitherAlgorithm) cbDa.getSelectedItem();
-                BufferedImageAdapter ad = new BufferedImageAdapter(scaledImg);
+                //resample straight to the preview size instead of reading the full output size
+                double s = Math.min(1, Math.min((double) buf.getWidth() / oWidth, (double) buf.getHeight() / oHeight));
+                ImagePipelineRaster ad = new ImagePipelineRaster(srcImg,
+                        Math.max(1, (int) Math.round(oWidth * s)), Math.max(1, (int) Math.round(oHeight * s)));
                 ad.setColorShift(filter.getValue());
-                BlackWhiteRaster bw = new BlackWhiteRaster(ad, da);
-                for (int y = 0; y < bw.getHeight(); y++) {
-                    for (int x = 0; x < bw.getWidth(); x++) {
-                        outImg.setRGB(x, y, bw.isBlack(x, y) ^ cbInvert.isSelected() ? Color.BLACK.getRGB() : Color.WHITE.getRGB());
-                    }
-                }
-                Graphics2D g = buf.createGraphics();
-                AffineTransform at =
-                        AffineTransform.getScaleInstance((double) buf.getWidth() / bw.getWidth(),
-                        (double) buf.getWidth() / bw.getWidth());
-                g.setColor(Color.WHITE);
-                g.fillRect(0, 0, buf.getWidth(), buf.getHeight());
-                g.drawRenderedImage(outImg, at);
-                lab.setText("");
-                prev.repaint();
+                preview[0] = new PreviewDitherer(ad, BlackWhiteRaster.getDitheringAlgorithm(da), buf.getWidth(), buf.getHeight(), previewListener, cache);
+                preview[0].start();
             }
         };
         filter.addChangeListener(new ChangeListener() {
@@ -169,6 +194,17 @@ public class PhotoPrint {
         if (JOptionPane.showConfirmDialog(
                 null, prev, "Waehlen Sie einen Algorithmus aus", JOptionPane.OK_CANCEL_OPTION)
                 == JOptionPane.OK_OPTION) {
+            if (preview[0] != null) {
+                preview[0].cancel();
+            }
+            ImagePipelineRaster ad = new ImagePipelineRaster(srcImg, oWidth, oHeight);
+            ad.setColorShift(filter.getValue());
+            BlackWhiteRaster bw = new BlackWhiteRaster(ad, BlackWhiteRaster.getDitheringAlgorithm((DitherAlgorithm) cbDa.getSelectedItem()));
+            for (int y = 0; y < bw.getHeight(); y++) {
+                for (int x = 0; x < bw.getWidth(); x++) {
+                    outImg.setRGB(x, y, bw.isBlack(x, y) ^ cbInvert.isSelected() ? Color.BLACK.getRGB() : Color.WHITE.getRGB());
+                }
+            }
             EpilogZing instance = new EpilogZing("137.226.56.228");
             //JComboBox material = new JComboBox();
             //for (MaterialProperty mp : instance.getMaterialPropertys()) {
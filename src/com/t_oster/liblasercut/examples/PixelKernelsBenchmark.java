@@ -0,0 +1,92 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.examples;
+
+import com.t_oster.liblasercut.utils.BufferedImageAdapter;
+import com.t_oster.liblasercut.utils.PixelKernels;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Compares the per pixel greyscale conversion and thresholding with the
+ * row kernels from PixelKernels.
+ *
+ * Usage: PixelKernelsBenchmark [width height]
+ * On x86, compare a run with -XX:UseAVX=0 against the default to see the
+ * share of the SIMD code generated by the JIT.
+ */
+public class PixelKernelsBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int width = args.length > 1 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random r = new Random(0);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, r.nextInt(0x1000000));
+            }
+        }
+        BufferedImageAdapter ad = new BufferedImageAdapter(img);
+        int[] row = new int[width];
+        byte[] packed = new byte[(width + 7) / 8];
+        long check = 0;
+        //the first rounds warm up the JIT
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int y = 0; y < height; y++) {
+                for (int bx = 0; bx < packed.length; bx++) {
+                    int bits = 0;
+                    for (int i = 0; i < 8 && bx * 8 + i < width; i++) {
+                        if (ad.getGreyScale(bx * 8 + i, y) < 128) {
+                            bits |= 0x80 >> i;
+                        }
+                    }
+                    packed[bx] = (byte) bits;
+                }
+                check += packed[0];
+            }
+            long perPixel = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int y = 0; y < height; y++) {
+                ad.getGreyScaleRow(y, row);
+                PixelKernels.packBelow(row, width, 128, packed);
+                check += packed[0];
+            }
+            long rows = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int y = 0; y < height; y++) {
+                img.getRGB(0, y, width, 1, row, 0, width);
+                PixelKernels.luminance(row, 0, row, 0, width);
+                PixelKernels.packBelow(row, width, 128, packed);
+                check += packed[0];
+            }
+            long fixedPoint = System.nanoTime() - start;
+            System.out.println("round " + round
+                    + ": per pixel " + perPixel / 1000000 + " ms"
+                    + ", adapter rows " + rows / 1000000 + " ms"
+                    + ", fixed point rows " + fixedPoint / 1000000 + " ms"
+                    + " (" + String.format("%.1f", (double) perPixel / fixedPoint) + "x)");
+        }
+        //keeps the loops from being optimized away
+        System.out.println("checksum " + check);
+    }
+}
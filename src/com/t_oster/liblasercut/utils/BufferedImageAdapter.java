@@ -58,17 +58,40 @@ public class BufferedImageAdapter implements GreyscaleRaster
 
   public int getGreyScale(int x, int line)
   {
-    Color c = new Color(img.getRGB(x, line));
-    int value = colorShift+(int) (0.3 * c.getRed() + 0.59 * c.getGreen() + 0.11 * c.getBlue());
+    int c = img.getRGB(x, line);
+    int value = colorShift+(int) (0.3 * ((c >> 16) & 0xFF) + 0.59 * ((c >> 8) & 0xFF) + 0.11 * (c & 0xFF));
     return invertColors ? 255-Math.max(Math.min(value, 255), 0) : Math.max(Math.min(value, 255), 0);
   }
 
+  /**
+   * Reads the grey values of a whole line into row. The result is the
+   * same as from getGreyScale, but the image is read in one call and
+   * the conversion runs in one loop.
+   */
+  public void getGreyScaleRow(int line, int[] row)
+  {
+    int width = img.getWidth();
+    img.getRGB(0, line, width, 1, row, 0, width);
+    for (int x = 0; x < width; x++)
+    {
+      int c = row[x];
+      int value = colorShift+(int) (0.3 * ((c >> 16) & 0xFF) + 0.59 * ((c >> 8) & 0xFF) + 0.11 * (c & 0xFF));
+      value = Math.max(Math.min(value, 255), 0);
+      row[x] = invertColors ? 255-value : value;
+    }
+  }
+
   public void setGreyScale(int x, int y, int grey)
   {
     Color c = new Color(grey, grey, grey);
     img.setRGB(x, y, c.getRGB());
   }
 
+  public boolean requiresSequentialReads()
+  {
+    return false;
+  }
+
   public int getWidth()
   {
     return img.getWidth();
@@ -0,0 +1,276 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.dithering.DitheringAlgorithm;
+import com.t_oster.liblasercut.platform.Util;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A GreyscaleRaster which prepares a BufferedImage for engraving in one
+ * pass: it resamples the image to the output size, converts it to
+ * luminance and applies colour shift, gamma and inversion from one lookup
+ * table.
+ *
+ * Every row is computed from the source rows it covers when it is read,
+ * so neither a scaled copy nor a greyscale copy of the image is ever
+ * allocated. Scaling uses area averaging, so every output pixel is the
+ * average of the part of the source it covers.
+ *
+ * Pass it directly to a DitheringAlgorithm, or to a StreamingDitheredRaster
+ * to also avoid the full dithered bitmap.
+ * Rows should be read in order. Different threads may read at the same time.
+ */
+public class ImagePipelineRaster implements GreyscaleRaster
+{
+
+  private static class Row
+  {
+    final int y;
+    final int[] lut;
+    final int[] values;
+
+    Row(int y, int[] lut, int[] values)
+    {
+      this.y = y;
+      this.lut = lut;
+      this.values = values;
+    }
+  }
+
+  private final BufferedImage img;
+  private final int width;
+  private final int height;
+  private int colorShift = 0;
+  private boolean invertColors = false;
+  private double gamma = 1;
+  private volatile int[] lut = null;
+  // the last computed row of each reading thread
+  private final ThreadLocal<Row> cache = new ThreadLocal<Row>();
+
+  /**
+   * @param img the source image
+   * @param width width of the output in pixels
+   * @param height height of the output in pixels
+   */
+  public ImagePipelineRaster(BufferedImage img, int width, int height)
+  {
+    if (width < 1 || height < 1)
+    {
+      throw new IllegalArgumentException("Invalid size "+width+"x"+height);
+    }
+    this.img = img;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Creates a pipeline which scales the image to the given size in mm
+   * at the given resolution
+   */
+  public static ImagePipelineRaster forSize(BufferedImage img, double widthMm, double heightMm, double dpi)
+  {
+    return new ImagePipelineRaster(img,
+      Math.max(1, (int) Math.round(Util.mm2px(widthMm, dpi))),
+      Math.max(1, (int) Math.round(Util.mm2px(heightMm, dpi))));
+  }
+
+  /**
+   * Creates a pipeline which scales the image to the given width in mm
+   * at the given resolution, keeping the aspect ratio
+   */
+  public static ImagePipelineRaster forWidth(BufferedImage img, double widthMm, double dpi)
+  {
+    int w = Math.max(1, (int) Math.round(Util.mm2px(widthMm, dpi)));
+    return new ImagePipelineRaster(img, w, Math.max(1, (int) Math.round((double) img.getHeight() * w / img.getWidth())));
+  }
+
+  public int getColorShift()
+  {
+    return colorShift;
+  }
+
+  /**
+   * Sets a value which is added to the luminance of every pixel
+   */
+  public synchronized void setColorShift(int colorShift)
+  {
+    this.colorShift = colorShift;
+    this.lut = null;
+  }
+
+  public boolean isInvertColors()
+  {
+    return invertColors;
+  }
+
+  public synchronized void setInvertColors(boolean invertColors)
+  {
+    this.invertColors = invertColors;
+    this.lut = null;
+  }
+
+  public double getGamma()
+  {
+    return gamma;
+  }
+
+  /**
+   * Sets the gamma which is applied after the colour shift. Values above 1
+   * darken the mid tones, values below 1 brighten them.
+   */
+  public synchronized void setGamma(double gamma)
+  {
+    if (gamma <= 0)
+    {
+      throw new IllegalArgumentException("Gamma has to be positive");
+    }
+    this.gamma = gamma;
+    this.lut = null;
+  }
+
+  /**
+   * Returns the table mapping luminance to the output grey value
+   */
+  private int[] getLut()
+  {
+    int[] result = lut;
+    if (result == null)
+    {
+      synchronized (this)
+      {
+        result = new int[256];
+        for (int i = 0; i < 256; i++)
+        {
+          int value = Math.max(0, Math.min(255, i + colorShift));
+          if (gamma != 1)
+          {
+            value = (int) Math.round(255 * Math.pow(value / 255.0, gamma));
+          }
+          result[i] = invertColors ? 255 - value : value;
+        }
+        lut = result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes output row y. A target pixel covers srcSize units of its
+   * axis and a source pixel covers size units, so the weights are the
+   * overlaps in these units.
+   */
+  private int[] computeRow(int y, int[] table)
+  {
+    int srcWidth = img.getWidth();
+    int srcHeight = img.getHeight();
+    long[] sums = new long[width];
+    int[] rgb = new int[srcWidth];
+    long[] rowSums = new long[width];
+    long top = (long) y * srcHeight;
+    long bottom = top + srcHeight;
+    for (int sy = (int) (top / height); sy < srcHeight && (long) sy * height < bottom; sy++)
+    {
+      long wy = Math.min(bottom, (long) (sy + 1) * height) - Math.max(top, (long) sy * height);
+      img.getRGB(0, sy, srcWidth, 1, rgb, 0, srcWidth);
+      PixelKernels.luminance(rgb, 0, rgb, 0, srcWidth);
+      Arrays.fill(rowSums, 0);
+      int tx = 0;
+      long txEnd = srcWidth;
+      for (int sx = 0; sx < srcWidth; sx++)
+      {
+        int luma = rgb[sx];
+        long start = (long) sx * width;
+        long end = start + width;
+        //distribute the source pixel over the target pixels it overlaps
+        while (start < end)
+        {
+          long part = Math.min(end, txEnd) - start;
+          rowSums[tx] += luma * part;
+          start += part;
+          if (start == txEnd && tx + 1 < width)
+          {
+            tx++;
+            txEnd += srcWidth;
+          }
+        }
+      }
+      for (int x = 0; x < width; x++)
+      {
+        sums[x] += rowSums[x] * wy;
+      }
+    }
+    long area = (long) srcWidth * srcHeight;
+    int[] values = new int[width];
+    for (int x = 0; x < width; x++)
+    {
+      values[x] = (int) Math.min(255, (sums[x] + area / 2) / area);
+    }
+    PixelKernels.applyLut(values, width, table);
+    return values;
+  }
+
+  private int[] getRow(int y)
+  {
+    int[] table = getLut();
+    Row r = cache.get();
+    if (r == null || r.y != y || r.lut != table)
+    {
+      r = new Row(y, table, computeRow(y, table));
+      cache.set(r);
+    }
+    return r.values;
+  }
+
+  /**
+   * Dithers the prepared image with the given algorithm
+   */
+  public BlackWhiteRaster dither(DitheringAlgorithm alg)
+  {
+    return alg.dither(this);
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return getRow(y)[x];
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    throw new UnsupportedOperationException("ImagePipelineRaster is read only");
+  }
+
+  public boolean requiresSequentialReads()
+  {
+    return false;
+  }
+}
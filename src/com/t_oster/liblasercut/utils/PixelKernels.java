@@ -0,0 +1,133 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+/**
+ * Batched pixel kernels for the image preparation and dithering hot
+ * loops.
+ *
+ * Each kernel works on a whole row in one counted loop over plain arrays
+ * without branches or calls in its body, which is the shape the HotSpot
+ * JIT compiles to SIMD instructions (SSE/AVX on x86) where the operation
+ * allows it. Per pixel interface calls, as in GreyscaleRaster.getGreyScale,
+ * can never be vectorized this way.
+ */
+public final class PixelKernels
+{
+
+  //luminance weights 0.3, 0.59 and 0.11 in 1/65536
+  static final int LUMA_R = 19661;
+  static final int LUMA_G = 38666;
+  static final int LUMA_B = 7209;
+
+  private PixelKernels()
+  {
+  }
+
+  /**
+   * Returns the luminance (0..255) of one packed RGB value
+   */
+  public static int luminance(int rgb)
+  {
+    return (LUMA_R * ((rgb >> 16) & 0xFF) + LUMA_G * ((rgb >> 8) & 0xFF) + LUMA_B * (rgb & 0xFF)) >> 16;
+  }
+
+  /**
+   * Converts count packed RGB values to luminance (0..255).
+   * rgb and grey may be the same array.
+   */
+  public static void luminance(int[] rgb, int rgbOffset, int[] grey, int greyOffset, int count)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      int c = rgb[rgbOffset + i];
+      grey[greyOffset + i] = (LUMA_R * ((c >> 16) & 0xFF) + LUMA_G * ((c >> 8) & 0xFF) + LUMA_B * (c & 0xFF)) >> 16;
+    }
+  }
+
+  /**
+   * Replaces each of the first count values by lut[value].
+   * All values have to be valid indices into lut.
+   */
+  public static void applyLut(int[] values, int count, int[] lut)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      values[i] = lut[values[i]];
+    }
+  }
+
+  /**
+   * Sets bit 7-(x%8) of packed[x/8] for every x &lt; count with
+   * grey[x] &lt; threshold. This is the bit layout of BlackWhiteRaster.getByte,
+   * so a set bit is a black pixel. Bits past count stay 0.
+   * The values are compared by their difference, so they have to be in
+   * a range where it can not overflow, as grey values are.
+   */
+  public static void packBelow(int[] grey, int count, int threshold, byte[] packed)
+  {
+    int full = count & ~7;
+    for (int x = 0; x < full; x += 8)
+    {
+      int bits = 0;
+      for (int i = 0; i < 8; i++)
+      {
+        //the sign bit of grey - threshold is set exactly if grey < threshold
+        bits |= ((grey[x + i] - threshold) >>> 31) << (7 - i);
+      }
+      packed[x >> 3] = (byte) bits;
+    }
+    if (full < count)
+    {
+      int bits = 0;
+      for (int i = 0; full + i < count; i++)
+      {
+        bits |= ((grey[full + i] - threshold) >>> 31) << (7 - i);
+      }
+      packed[full >> 3] = (byte) bits;
+    }
+  }
+
+  /**
+   * Like packBelow with a single threshold, but compares every pixel with
+   * its own threshold thresholds[x]
+   */
+  public static void packBelow(int[] grey, int count, int[] thresholds, byte[] packed)
+  {
+    int full = count & ~7;
+    for (int x = 0; x < full; x += 8)
+    {
+      int bits = 0;
+      for (int i = 0; i < 8; i++)
+      {
+        bits |= ((grey[x + i] - thresholds[x + i]) >>> 31) << (7 - i);
+      }
+      packed[x >> 3] = (byte) bits;
+    }
+    if (full < count)
+    {
+      int bits = 0;
+      for (int i = 0; full + i < count; i++)
+      {
+        bits |= ((grey[full + i] - thresholds[full + i]) >>> 31) << (7 - i);
+      }
+      packed[full >> 3] = (byte) bits;
+    }
+  }
+}
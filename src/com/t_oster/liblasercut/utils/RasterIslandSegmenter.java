@@ -0,0 +1,382 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.CroppedBlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.Raster3dPart;
+import com.t_oster.liblasercut.RasterPart;
+import com.t_oster.liblasercut.RasterizableJobPart;
+import com.t_oster.liblasercut.TimeIntensiveOperation;
+import com.t_oster.liblasercut.platform.Point;
+import com.t_oster.liblasercut.platform.Util;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Splits a raster part into islands of non white pixels, so that the
+ * empty space between them does not have to be swept by every scanline.
+ *
+ * The image is divided into a coarse grid of cells and connected groups of
+ * non empty cells form the islands. Islands whose bounding boxes overlap are
+ * merged, so every pixel is engraved exactly once. The resulting parts are
+ * ordered by nearest neighbour to keep the travel between them short.
+ */
+public class RasterIslandSegmenter extends TimeIntensiveOperation
+{
+
+  /**
+   * Smallest cell size in pixels. Islands closer than one cell are merged.
+   */
+  private static final int MIN_CELL_SIZE = 8;
+
+  /**
+   * The result of a segmentation
+   */
+  public static class Segmentation
+  {
+
+    private final List<RasterizableJobPart> parts;
+    private final double singleSweepTime;
+    private final double segmentedTime;
+
+    Segmentation(List<RasterizableJobPart> parts, double singleSweepTime, double segmentedTime)
+    {
+      this.parts = parts;
+      this.singleSweepTime = singleSweepTime;
+      this.segmentedTime = segmentedTime;
+    }
+
+    /**
+     * The islands as separate parts in the order they should be engraved.
+     * If the part could not be split, this only contains the original part.
+     */
+    public List<RasterizableJobPart> getParts()
+    {
+      return parts;
+    }
+
+    /**
+     * Estimated time in seconds to engrave the original part
+     */
+    public double getSingleSweepTime()
+    {
+      return singleSweepTime;
+    }
+
+    /**
+     * Estimated time in seconds to engrave all islands including the
+     * travel between them
+     */
+    public double getSegmentedTime()
+    {
+      return segmentedTime;
+    }
+
+    /**
+     * Estimated time in seconds which is saved by engraving the islands
+     * instead of the original part. May be negative.
+     */
+    public double getTimeSaved()
+    {
+      return singleSweepTime - segmentedTime;
+    }
+  }
+
+  /**
+   * Bounding box of an island in pixels, all coordinates inclusive
+   */
+  private static class Island
+  {
+
+    int x1, y1, x2, y2;
+
+    Island(int x1, int y1, int x2, int y2)
+    {
+      this.x1 = x1;
+      this.y1 = y1;
+      this.x2 = x2;
+      this.y2 = y2;
+    }
+
+    boolean overlaps(Island o)
+    {
+      return x1 <= o.x2 && o.x1 <= x2 && y1 <= o.y2 && o.y1 <= y2;
+    }
+
+    void add(Island o)
+    {
+      x1 = Math.min(x1, o.x1);
+      y1 = Math.min(y1, o.y1);
+      x2 = Math.max(x2, o.x2);
+      y2 = Math.max(y2, o.y2);
+    }
+  }
+
+  /**
+   * A rectangular window of another raster
+   */
+  private static class CroppedGreyscaleRaster implements GreyscaleRaster
+  {
+
+    private final GreyscaleRaster raster;
+    private final Island box;
+
+    CroppedGreyscaleRaster(GreyscaleRaster raster, Island box)
+    {
+      this.raster = raster;
+      this.box = box;
+    }
+
+    public int getWidth()
+    {
+      return box.x2 - box.x1 + 1;
+    }
+
+    public int getHeight()
+    {
+      return box.y2 - box.y1 + 1;
+    }
+
+    public int getGreyScale(int x, int y)
+    {
+      return raster.getGreyScale(box.x1 + x, box.y1 + y);
+    }
+
+    public void setGreyScale(int x, int y, int grey)
+    {
+      raster.setGreyScale(box.x1 + x, box.y1 + y, grey);
+    }
+
+    public boolean requiresSequentialReads()
+    {
+      return raster.requiresSequentialReads();
+    }
+  }
+
+  /**
+   * Splits the given part into islands.
+   * Only RasterParts and Raster3dParts can be split, any other part is
+   * returned unchanged.
+   * @param part the part to split
+   * @param paddingMm the overscan on each side of a scanline in mm
+   * @param engraveSpeed engrave speed in mm/min
+   * @param travelSpeed travel speed in mm/min
+   * @return the islands and the estimated engraving times
+   */
+  public Segmentation segment(RasterizableJobPart part, double paddingMm, double engraveSpeed, double travelSpeed)
+  {
+    GreyscaleRaster image = part.getImage();
+    int width = image.getWidth();
+    int height = image.getHeight();
+    double dpi = part.getDPI();
+    int overscan = (int) Math.round(Util.mm2px(paddingMm, dpi));
+    int cell = Math.max(MIN_CELL_SIZE, overscan);
+    int gw = (width + cell - 1) / cell;
+    int gh = (height + cell - 1) / cell;
+
+    //mark all cells containing a non white pixel and measure the single sweep
+    boolean[] occupied = new boolean[gw * gh];
+    long singleSweepLength = 0;
+    for (int y = 0; y < height; y++)
+    {
+      int rowMin = -1;
+      int rowMax = -1;
+      for (int x = 0; x < width; x++)
+      {
+        if (image.getGreyScale(x, y) < 255)
+        {
+          occupied[(y / cell) * gw + x / cell] = true;
+          if (rowMin < 0)
+          {
+            rowMin = x;
+          }
+          rowMax = x;
+        }
+      }
+      if (rowMin >= 0)
+      {
+        singleSweepLength += rowMax - rowMin + 1 + 2 * overscan;
+      }
+      setProgress(50 * (y + 1) / height);
+    }
+    double singleSweepTime = sweepTime(singleSweepLength, dpi, engraveSpeed);
+
+    List<Island> islands = findIslands(occupied, gw, gh, cell, width, height);
+    mergeOverlapping(islands);
+    if (islands.size() <= 1 || !(part instanceof RasterPart || part instanceof Raster3dPart))
+    {
+      List<RasterizableJobPart> result = new LinkedList<RasterizableJobPart>();
+      result.add(part);
+      setProgress(100);
+      return new Segmentation(result, singleSweepTime, singleSweepTime);
+    }
+
+    //order by nearest neighbour, starting at the upper left corner
+    List<RasterizableJobPart> result = new LinkedList<RasterizableJobPart>();
+    long segmentedLength = 0;
+    double travel = 0;
+    int cx = 0;
+    int cy = 0;
+    int total = islands.size();
+    while (!islands.isEmpty())
+    {
+      Island next = null;
+      double nextDist = Double.MAX_VALUE;
+      for (Island i : islands)
+      {
+        double d = Math.hypot(i.x1 - cx, i.y1 - cy);
+        if (d < nextDist)
+        {
+          nextDist = d;
+          next = i;
+        }
+      }
+      islands.remove(next);
+      travel += nextDist;
+      segmentedLength += islandSweepLength(image, next, overscan);
+      result.add(createPart(part, next));
+      cx = next.x1;
+      cy = next.y2;
+      setProgress(50 + 50 * (total - islands.size()) / total);
+    }
+    double segmentedTime = sweepTime(segmentedLength, dpi, engraveSpeed)
+      + sweepTime((long) travel, dpi, travelSpeed);
+    return new Segmentation(result, singleSweepTime, segmentedTime);
+  }
+
+  private static double sweepTime(long lengthPx, double dpi, double speed)
+  {
+    return Util.px2mm(lengthPx, dpi) / speed * 60;
+  }
+
+  /**
+   * Finds the 8-connected components of occupied cells and returns their
+   * bounding boxes in pixels
+   */
+  private List<Island> findIslands(boolean[] occupied, int gw, int gh, int cell, int width, int height)
+  {
+    List<Island> result = new ArrayList<Island>();
+    boolean[] visited = new boolean[occupied.length];
+    int[] stack = new int[occupied.length];
+    for (int start = 0; start < occupied.length; start++)
+    {
+      if (!occupied[start] || visited[start])
+      {
+        continue;
+      }
+      int x1 = gw, y1 = gh, x2 = -1, y2 = -1;
+      int size = 0;
+      stack[size++] = start;
+      visited[start] = true;
+      while (size > 0)
+      {
+        int c = stack[--size];
+        int cx = c % gw;
+        int cy = c / gw;
+        x1 = Math.min(x1, cx);
+        y1 = Math.min(y1, cy);
+        x2 = Math.max(x2, cx);
+        y2 = Math.max(y2, cy);
+        for (int ny = Math.max(0, cy - 1); ny <= Math.min(gh - 1, cy + 1); ny++)
+        {
+          for (int nx = Math.max(0, cx - 1); nx <= Math.min(gw - 1, cx + 1); nx++)
+          {
+            int n = ny * gw + nx;
+            if (occupied[n] && !visited[n])
+            {
+              visited[n] = true;
+              stack[size++] = n;
+            }
+          }
+        }
+      }
+      result.add(new Island(x1 * cell, y1 * cell,
+        Math.min(width, (x2 + 1) * cell) - 1, Math.min(height, (y2 + 1) * cell) - 1));
+    }
+    return result;
+  }
+
+  /**
+   * Merges islands until no bounding boxes overlap, because a pixel must
+   * not be engraved by two islands
+   */
+  private void mergeOverlapping(List<Island> islands)
+  {
+    boolean merged = true;
+    while (merged)
+    {
+      merged = false;
+      for (int i = 0; i < islands.size() && !merged; i++)
+      {
+        for (int j = i + 1; j < islands.size(); j++)
+        {
+          if (islands.get(i).overlaps(islands.get(j)))
+          {
+            islands.get(i).add(islands.remove(j));
+            merged = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private long islandSweepLength(GreyscaleRaster image, Island island, int overscan)
+  {
+    long result = 0;
+    for (int y = island.y1; y <= island.y2; y++)
+    {
+      int rowMin = -1;
+      int rowMax = -1;
+      for (int x = island.x1; x <= island.x2; x++)
+      {
+        if (image.getGreyScale(x, y) < 255)
+        {
+          if (rowMin < 0)
+          {
+            rowMin = x;
+          }
+          rowMax = x;
+        }
+      }
+      if (rowMin >= 0)
+      {
+        result += rowMax - rowMin + 1 + 2 * overscan;
+      }
+    }
+    return result;
+  }
+
+  private RasterizableJobPart createPart(RasterizableJobPart part, Island island)
+  {
+    Point start = part.getStartPosition(island.y1);
+    start.x += island.x1;
+    if (part instanceof RasterPart)
+    {
+      //RasterParts need a BlackWhiteRaster, so the island is a view of the original
+      BlackWhiteRaster view = new CroppedBlackWhiteRaster((BlackWhiteRaster) part.getImage(), island.x1, island.y1,
+        island.x2 - island.x1 + 1, island.y2 - island.y1 + 1);
+      return new RasterPart(view, part.getLaserProperty(), start, part.getDPI());
+    }
+    return new Raster3dPart(new CroppedGreyscaleRaster(part.getImage(), island), part.getLaserProperty(), start, part.getDPI());
+  }
+}
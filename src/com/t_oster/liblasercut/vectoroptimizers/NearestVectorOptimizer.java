@@ -18,6 +18,7 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
+import com.t_oster.liblasercut.CancellationToken;
 import com.t_oster.liblasercut.platform.Point;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,9 +39,11 @@ public class NearestVectorOptimizer extends VectorOptimizer
       return result;
     }
 
+    CancellationToken token = CancellationToken.current();
     result.add(e.remove(0));
     while (!e.isEmpty())
     {
+      token.throwIfCancelled();
       Point end = result.get(result.size() - 1).getEnd();
       //find nearest element
       int next = 0;
@@ -18,6 +18,7 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
+import com.t_oster.liblasercut.CancellationToken;
 import com.t_oster.liblasercut.LaserProperty;
 import com.t_oster.liblasercut.VectorCommand;
 import com.t_oster.liblasercut.VectorPart;
@@ -200,9 +201,18 @@ public abstract class VectorOptimizer
 
   protected abstract List<Element> sort(List<Element> e);
 
+  /**
+   * Optimizes the given part. The stages check the cancellation token of
+   * the current thread and stop with a CancellationException if the job
+   * has been cancelled.
+   */
   public VectorPart optimize(VectorPart vp)
   {
-    List<Element> opt = this.sort(this.divide(vp));
+    CancellationToken token = CancellationToken.current();
+    List<Element> divided = this.divide(vp);
+    token.throwIfCancelled();
+    List<Element> opt = this.sort(divided);
+    token.throwIfCancelled();
     LaserProperty cp = opt.isEmpty() ? vp.getCurrentCuttingProperty() : opt.get(0).prop;
     VectorPart result = new VectorPart(cp, vp.getDPI());
     for (Element e : opt)
@@ -104,4 +104,38 @@ public class BlackWhiteRasterTest
       }
     }
   }
+
+  @Test
+  public void testCroppedView()
+  {
+    BlackWhiteRaster ras = new BlackWhiteRaster(45, 7);
+    for (int x = 0; x < ras.getWidth(); x++)
+    {
+      for (int y = 0; y < ras.getHeight(); y++)
+      {
+        ras.setBlack(x, y, (x * 7 + y * 3) % 5 < 2);
+      }
+    }
+    int[][] windows = new int[][]{{0, 0, 45, 7}, {3, 1, 20, 5}, {8, 0, 37, 7}, {13, 2, 11, 3}, {41, 0, 4, 7}};
+    for (int[] w : windows)
+    {
+      CroppedBlackWhiteRaster view = new CroppedBlackWhiteRaster(ras, w[0], w[1], w[2], w[3]);
+      BlackWhiteRaster copy = new BlackWhiteRaster(w[2], w[3]);
+      for (int x = 0; x < w[2]; x++)
+      {
+        for (int y = 0; y < w[3]; y++)
+        {
+          assertEquals(ras.isBlack(w[0] + x, w[1] + y), view.isBlack(x, y));
+          copy.setBlack(x, y, ras.isBlack(w[0] + x, w[1] + y));
+        }
+      }
+      for (int bx = 0; bx < (w[2] + 7) / 8; bx++)
+      {
+        for (int y = 0; y < w[3]; y++)
+        {
+          assertEquals(copy.getByte(bx, y), view.getByte(bx, y));
+        }
+      }
+    }
+  }
 }
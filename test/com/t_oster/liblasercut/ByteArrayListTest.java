@@ -0,0 +1,83 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.drivers.EpilogZing;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the primitive operations of ByteArrayList
+ */
+public class ByteArrayListTest
+{
+
+  @Test
+  public void testPrimitiveOperations()
+  {
+    ByteArrayList list = new ByteArrayList(2);
+    for (int i = 0; i < 1000; i++)
+    {
+      list.addByte((byte) (i < 10 || i >= 990 ? 0 : i));
+    }
+    assertEquals(1000, list.size());
+    assertEquals(10, list.trimLeading((byte) 0));
+    assertEquals(10, list.trimTrailing((byte) 0));
+    assertEquals(980, list.size());
+    assertEquals((byte) 10, list.getByte(0));
+    assertEquals((byte) 10, list.array()[list.offset()]);
+    list.reverse();
+    assertEquals((byte) 989, list.getByte(0));
+    assertEquals((byte) 10, list.getByte(979));
+    list.addAll(new byte[]{1, 2, 3}, 1, 2);
+    assertEquals(982, list.size());
+    assertEquals((byte) 3, list.getByte(981));
+    list.add(0, (byte) 7);
+    assertEquals((byte) 7, list.getByte(0));
+    assertEquals(0, new ByteArrayList(0).trimLeading((byte) 0));
+  }
+
+  @Test
+  public void testEpilogEncodeMatchesListVersion()
+  {
+    byte[] line = new byte[600];
+    Random r = new Random(1);
+    for (int i = 0; i < line.length; i++)
+    {
+      //long runs and long literal sequences
+      line[i] = (byte) (i % 300 < 150 ? i / 200 : r.nextInt(256));
+    }
+    ByteArrayList primitive = new ByteArrayList(line.length);
+    primitive.addAll(line, 0, line.length);
+    List<Byte> boxed = new ArrayList<Byte>();
+    for (byte b : line)
+    {
+      boxed.add(b);
+    }
+    ByteArrayList encoded = new ByteArrayList(line.length);
+    List<Byte> expected = new ArrayList<Byte>();
+    EpilogZing cutter = new EpilogZing();
+    cutter.encode(primitive, encoded);
+    cutter.encode(boxed, expected);
+    assertEquals(expected, encoded);
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.FloydSteinberg;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for cooperative cancellation of jobs
+ */
+public class CancellationTokenTest
+{
+
+  /**
+   * A cutter which reports progress until it is cancelled
+   */
+  private static class EndlessCutter extends LaserCutter
+  {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch stopped = new CountDownLatch(1);
+
+    @Override
+    public void sendJob(LaserJob job, ProgressListener pl, List<String> warnings)
+    {
+      started.countDown();
+      try
+      {
+        for (int i = 0; true; i = (i + 1) % 100)
+        {
+          pl.progressChanged(this, i);
+        }
+      }
+      finally
+      {
+        stopped.countDown();
+      }
+    }
+
+    @Override
+    public List<Double> getResolutions()
+    {
+      return Arrays.asList(500d);
+    }
+
+    @Override
+    public double getBedWidth()
+    {
+      return 100;
+    }
+
+    @Override
+    public double getBedHeight()
+    {
+      return 100;
+    }
+
+    @Override
+    public String getModelName()
+    {
+      return "Endless";
+    }
+
+    @Override
+    public LaserCutter clone()
+    {
+      return new EndlessCutter();
+    }
+
+    public String[] getPropertyKeys()
+    {
+      return new String[0];
+    }
+
+    public void setProperty(String key, Object value)
+    {
+    }
+
+    public Object getProperty(String key)
+    {
+      return null;
+    }
+  }
+
+  @Test
+  public void testListeners()
+  {
+    CancellationToken token = new CancellationToken();
+    final AtomicInteger calls = new AtomicInteger();
+    Runnable l = new Runnable()
+    {
+      public void run()
+      {
+        calls.incrementAndGet();
+      }
+    };
+    token.addCancelListener(l);
+    token.cancel();
+    token.cancel();
+    assertEquals(1, calls.get());
+    //listeners added later run right away
+    token.addCancelListener(l);
+    assertEquals(2, calls.get());
+    assertTrue(token.isCancelled());
+  }
+
+  @Test(timeout = 10000)
+  public void testCancelDithering()
+  {
+    GreyscaleRaster image = new BlackWhiteRaster(500, 500);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      for (ForkJoinPool p : new ForkJoinPool[]{null, pool})
+      {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        FloydSteinberg fs = new FloydSteinberg();
+        fs.setForkJoinPool(p);
+        fs.setCancellationToken(token);
+        try
+        {
+          fs.dither(image);
+          fail("dithering was not cancelled");
+        }
+        catch (CancellationException e)
+        {
+        }
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testCancelSendJobAsync() throws Exception
+  {
+    EndlessCutter cutter = new EndlessCutter();
+    CancellationToken token = new CancellationToken();
+    CompletableFuture<Void> future = cutter.sendJobAsync(new LaserJob("test", "test", "test"), null, null, token);
+    assertTrue(cutter.started.await(5, TimeUnit.SECONDS));
+    assertFalse(future.isDone());
+    future.cancel(true);
+    assertTrue(token.isCancelled());
+    assertTrue(future.isCancelled());
+  }
+
+  @Test(timeout = 10000)
+  public void testCancelWithoutToken() throws Exception
+  {
+    EndlessCutter cutter = new EndlessCutter();
+    CompletableFuture<Void> future = cutter.sendJobAsync(new LaserJob("test", "test", "test"), null, null, CancellationToken.NONE);
+    assertTrue(cutter.started.await(5, TimeUnit.SECONDS));
+    future.cancel(true);
+    assertTrue(future.isCancelled());
+    //the job stops, so the thread leaves sendJob
+    assertTrue(cutter.stopped.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10000)
+  public void testCancelTokenCancelsFuture() throws Exception
+  {
+    EndlessCutter cutter = new EndlessCutter();
+    CancellationToken token = new CancellationToken();
+    CompletableFuture<Void> future = cutter.sendJobAsync(new LaserJob("test", "test", "test"), null, null, token);
+    assertTrue(cutter.started.await(5, TimeUnit.SECONDS));
+    token.cancel();
+    try
+    {
+      future.get();
+      fail("the job was not cancelled");
+    }
+    catch (CancellationException e)
+    {
+    }
+    catch (ExecutionException e)
+    {
+      fail("unexpected "+e.getCause());
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for LaserJob
+ */
+public class LaserJobTest
+{
+
+  private BlackWhiteRaster pattern(int width, int height, int seed)
+  {
+    BlackWhiteRaster r = new BlackWhiteRaster(width, height);
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        r.setBlack(x, y, (x * 7 + y * 3 + seed) % 5 == 0);
+      }
+    }
+    return r;
+  }
+
+  @Test
+  public void testMergeRasterParts()
+  {
+    FloatPowerSpeedFocusProperty prop = new FloatPowerSpeedFocusProperty();
+    BlackWhiteRaster a = pattern(21, 10, 0);
+    BlackWhiteRaster b = pattern(13, 12, 1);
+    LaserJob job = new LaserJob("test", "test", "test");
+    job.addPart(new RasterPart(a, prop, new Point(3, 5), 500));
+    job.addPart(new RasterPart(b, prop.clone(), new Point(30, 11), 500));
+    assertEquals(1, job.mergeRasterParts());
+    assertEquals(1, job.getParts().size());
+    RasterPart merged = (RasterPart) job.getParts().get(0);
+    assertEquals(3, merged.getMinX());
+    assertEquals(5, merged.getMinY());
+    assertEquals(43, merged.getMaxX());
+    assertEquals(23, merged.getMaxY());
+
+    BlackWhiteRaster expected = new BlackWhiteRaster(40, 18);
+    for (int y = 0; y < 10; y++)
+    {
+      for (int x = 0; x < 21; x++)
+      {
+        expected.setBlack(x, y, a.isBlack(x, y));
+      }
+    }
+    for (int y = 0; y < 12; y++)
+    {
+      for (int x = 0; x < 13; x++)
+      {
+        expected.setBlack(x + 27, y + 6, b.isBlack(x, y));
+      }
+    }
+    RasterPart reference = new RasterPart(expected, prop, new Point(3, 5), 500);
+    for (int y = 0; y < 18; y++)
+    {
+      for (int x = 0; x < 40; x++)
+      {
+        assertEquals(expected.isBlack(x, y), merged.isBlack(x, y));
+      }
+      assertEquals(reference.getRasterLine(y), merged.getRasterLine(y));
+      assertEquals(reference.lineIsBlank(y), merged.lineIsBlank(y));
+    }
+  }
+
+  @Test
+  public void testIncompatiblePartsAreNotMerged()
+  {
+    FloatPowerSpeedFocusProperty prop = new FloatPowerSpeedFocusProperty();
+    FloatPowerSpeedFocusProperty other = new FloatPowerSpeedFocusProperty();
+    other.setPower(50);
+    LaserJob job = new LaserJob("test", "test", "test");
+    //different property
+    job.addPart(new RasterPart(pattern(10, 10, 0), prop, new Point(0, 0), 500));
+    job.addPart(new RasterPart(pattern(10, 10, 0), other, new Point(20, 0), 500));
+    //vertically apart
+    job.addPart(new RasterPart(pattern(10, 10, 0), other, new Point(20, 50), 500));
+    //separated by a vector part
+    job.addPart(new VectorPart(prop, 500));
+    job.addPart(new RasterPart(pattern(10, 10, 0), other, new Point(20, 50), 500));
+    assertEquals(0, job.mergeRasterParts());
+    assertEquals(5, job.getParts().size());
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.FloydSteinberg;
+import com.t_oster.liblasercut.dithering.Ordered;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the memory mapped raster implementations
+ */
+public class MappedRasterTest
+{
+
+  private MappedGreyscaleRaster createGradient(int width, int height) throws IOException
+  {
+    // tiny tiles, so that the test crosses many tile boundaries
+    MappedGreyscaleRaster result = new MappedGreyscaleRaster(width, height, null, 256, 2);
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        result.setGreyScale(x, y, (x * 7 + y * 3) % 256);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testGreyscaleRoundTrip() throws IOException
+  {
+    MappedGreyscaleRaster ras = new MappedGreyscaleRaster(100, 40, null, 256, 2);
+    assertEquals(255, ras.getGreyScale(50, 20));
+    ras.setGreyScale(50, 20, 17);
+    ras.setGreyScale(99, 39, 0);
+    assertEquals(17, ras.getGreyScale(50, 20));
+    assertEquals(0, ras.getGreyScale(99, 39));
+    assertTrue(ras.getResidentTileCount() <= 2);
+    ras.close();
+  }
+
+  @Test
+  public void testDitheringMatchesHeapRaster() throws IOException
+  {
+    MappedGreyscaleRaster src = createGradient(123, 77);
+    BlackWhiteRaster expected = new BlackWhiteRaster(src, new FloydSteinberg());
+    MappedBlackWhiteRaster ras = new MappedBlackWhiteRaster(123, 77, null, 64, 2);
+    new FloydSteinberg().ditherDirect(src, ras);
+    for (int y = 0; y < ras.getHeight(); y++)
+    {
+      for (int x = 0; x < ras.getWidth(); x++)
+      {
+        assertEquals(expected.isBlack(x, y), ras.isBlack(x, y));
+      }
+      for (int bx = 0; bx < (ras.getWidth() + 7) / 8; bx++)
+      {
+        assertEquals(expected.getByte(bx, y), ras.getByte(bx, y));
+      }
+    }
+    assertTrue(ras.getResidentTileCount() <= 2);
+    ras.close();
+    src.close();
+  }
+
+  @Test
+  public void testDitherInPlace() throws IOException
+  {
+    MappedGreyscaleRaster src = createGradient(50, 30);
+    BlackWhiteRaster expected = new BlackWhiteRaster(src, new Ordered());
+    new Ordered().ditherDirect(src);
+    for (int y = 0; y < src.getHeight(); y++)
+    {
+      for (int x = 0; x < src.getWidth(); x++)
+      {
+        assertEquals(expected.getGreyScale(x, y), src.getGreyScale(x, y));
+      }
+    }
+    src.close();
+  }
+}
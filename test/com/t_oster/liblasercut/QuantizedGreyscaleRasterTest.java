@@ -0,0 +1,123 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for QuantizedGreyscaleRaster
+ */
+public class QuantizedGreyscaleRasterTest
+{
+
+  private GreyscaleRaster gradient(final int width)
+  {
+    return new GreyscaleRaster()
+    {
+      public int getWidth()
+      {
+        return width;
+      }
+
+      public int getHeight()
+      {
+        return 2;
+      }
+
+      public int getGreyScale(int x, int y)
+      {
+        //the second row ends with white pixels
+        return y == 1 && x >= width - 10 ? 255 : x * 250 / width;
+      }
+
+      public void setGreyScale(int x, int y, int grey)
+      {
+      }
+
+      public boolean requiresSequentialReads()
+      {
+        return false;
+      }
+    };
+  }
+
+  private int countRuns(GreyscaleRaster r, int y)
+  {
+    int runs = 1;
+    for (int x = 1; x < r.getWidth(); x++)
+    {
+      if (r.getGreyScale(x, y) != r.getGreyScale(x - 1, y))
+      {
+        runs++;
+      }
+    }
+    return runs;
+  }
+
+  @Test
+  public void testLevels()
+  {
+    GreyscaleRaster src = gradient(256);
+    QuantizedGreyscaleRaster q = new QuantizedGreyscaleRaster(src, 4, false, 0);
+    for (int y = 0; y < 2; y++)
+    {
+      for (int x = 0; x < 256; x++)
+      {
+        int v = q.getGreyScale(x, y);
+        assertTrue(v == 0 || v == 85 || v == 170 || v == 255);
+        if (src.getGreyScale(x, y) == 255)
+        {
+          assertEquals(255, v);
+        }
+      }
+    }
+    assertTrue(countRuns(q, 0) <= 4);
+  }
+
+  @Test
+  public void testErrorDiffusionKeepsTone()
+  {
+    GreyscaleRaster src = gradient(256);
+    QuantizedGreyscaleRaster q = new QuantizedGreyscaleRaster(src, 3, true, 0);
+    long expected = 0;
+    long actual = 0;
+    for (int x = 0; x < 256; x++)
+    {
+      expected += src.getGreyScale(x, 0);
+      actual += q.getGreyScale(x, 0);
+    }
+    assertEquals(expected / 256.0, actual / 256.0, 1);
+  }
+
+  @Test
+  public void testRunMerging()
+  {
+    GreyscaleRaster src = gradient(256);
+    QuantizedGreyscaleRaster full = new QuantizedGreyscaleRaster(src, 256, false, 0);
+    QuantizedGreyscaleRaster merged = new QuantizedGreyscaleRaster(src, 256, false, 16);
+    assertTrue(countRuns(full, 0) > 200);
+    assertTrue(countRuns(merged, 0) < 20);
+    for (int x = 246; x < 256; x++)
+    {
+      assertEquals(255, merged.getGreyScale(x, 1));
+    }
+    assertTrue(merged.getGreyScale(245, 1) < 255);
+  }
+}
@@ -18,9 +18,11 @@
  **/
 package com.t_oster.liblasercut;
 
+import com.t_oster.liblasercut.drivers.Dummy;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.utils.BufferedImageAdapter;
 import java.awt.image.BufferedImage;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -376,6 +378,23 @@ public class RasterizableJobPartTest
     assertEquals(propertyForPower(50), raster.getPowerSpeedFocusPropertyForColor(127));
     assertEquals(propertyForPower(0), raster.getPowerSpeedFocusPropertyForColor(255));
   }
+
+  /**
+   * Test that Raster3dPart shares equal properties and notices changes of
+   * its base property
+   */
+  @Test
+  public void testPropertyForColorIsShared()
+  {
+    RasterizableJobPartImpl instance = new RasterizableJobPartImpl();
+    Raster3dPart raster = instance.toRaster3dPart();
+
+    assertSame(raster.getPowerSpeedFocusPropertyForColor(0), raster.getPowerSpeedFocusPropertyForColor(0));
+    assertSame(raster.getPowerSpeedFocusPropertyForColor(254), raster.getPowerSpeedFocusPropertyForColor(255));
+
+    ((FloatPowerSpeedFocusProperty) raster.getLaserProperty()).setPower(50f);
+    assertEquals(propertyForPower(50), raster.getPowerSpeedFocusPropertyForColor(0));
+  }
   
   /**
    * Test the tricky case of a pixel on the very right edge
@@ -414,9 +433,152 @@ public class RasterizableJobPartTest
     boolean done = instance.hasFinishedCuttingLine(x, y);
     assertEquals(true, done);
   }
-  
 
-  
+  /**
+   * Test of feedScanlines method, of class RasterizableJobPart.
+   */
+  @Test
+  public void testFeedScanlines() throws Exception
+  {
+    Raster3dPart instance = new RasterizableJobPartImpl().toRaster3dPart();
+    final StringBuilder result = new StringBuilder();
+    instance.feedScanlines(new ScanlineEmitter()
+    {
+      public void startLine(int x, int y)
+      {
+        result.append("(").append(x).append(",").append(y).append(")");
+      }
+
+      public void run(FloatPowerSpeedFocusProperty property, int x, int y)
+      {
+        result.append(" ").append((int) property.getPower()).append(">").append(x);
+      }
+
+      public void endLine()
+      {
+        result.append(";");
+      }
+    }, 0, instance.getDPI(), false);
+    String[] lines = result.toString().split(";");
+    // the blank fifth row is skipped
+    assertEquals(5, lines.length);
+    // --XX-XXX-
+    assertEquals("(2,0) 0>2 100>4 0>5 100>8 0>8", lines[0]);
+  }
+
+  /**
+   * Test of isColumnScanShorter and feedScanlines along columns
+   */
+  @Test
+  public void testFeedScanlinesAlongColumns() throws Exception
+  {
+    BufferedImageAdapter image = new BufferedImageAdapter(new BufferedImage(3, 40, BufferedImage.TYPE_BYTE_GRAY));
+    FloatPowerSpeedFocusProperty prop = new FloatPowerSpeedFocusProperty();
+    prop.setPower(100);
+    Raster3dPart instance = new Raster3dPart(image, prop, new Point(10, 20), 72);
+    assertTrue(instance.isColumnScanShorter(5));
+    final StringBuilder result = new StringBuilder();
+    instance.feedScanlines(new ScanlineEmitter()
+    {
+      public void startLine(int x, int y)
+      {
+        result.append("(").append(x).append(",").append(y).append(")");
+      }
+
+      public void run(FloatPowerSpeedFocusProperty property, int x, int y)
+      {
+        result.append(" ").append((int) property.getPower()).append(">").append(x).append(",").append(y);
+      }
+
+      public void endLine()
+      {
+        result.append(";");
+      }
+    }, 0, instance.getDPI(), false, true);
+    String[] lines = result.toString().split(";");
+    assertEquals(3, lines.length);
+    assertEquals("(10,20) 0>10,20 100>10,60 0>10,60", lines[0]);
+    assertEquals("(12,20) 0>12,20 100>12,60 0>12,60", lines[2]);
+  }
+
+  /**
+   * Test that long white gaps split a scanline
+   */
+  @Test
+  public void testFeedScanlinesSkipsGaps() throws Exception
+  {
+    BufferedImageAdapter image = new BufferedImageAdapter(new BufferedImage(40, 1, BufferedImage.TYPE_BYTE_GRAY));
+    for (int x = 0; x < 40; x++)
+    {
+      image.setGreyScale(x, 0, x < 2 || (x >= 30 && x < 32) || (x >= 35 && x < 37) ? 0 : 255);
+    }
+    FloatPowerSpeedFocusProperty prop = new FloatPowerSpeedFocusProperty();
+    prop.setPower(100);
+    Raster3dPart instance = new Raster3dPart(image, prop, new Point(0, 0), 72);
+    final StringBuilder result = new StringBuilder();
+    instance.feedScanlines(new ScanlineEmitter()
+    {
+      public void startLine(int x, int y)
+      {
+        result.append("(").append(x).append(")");
+      }
+
+      public void run(FloatPowerSpeedFocusProperty property, int x, int y)
+      {
+        result.append(" ").append((int) property.getPower()).append(">").append(x);
+      }
+
+      public void endLine()
+      {
+        result.append(";");
+      }
+    }, 0, 25.4 * 10 / 72, 72, false, false);
+    // the gap of 28 pixels is skipped, the one of 3 pixels is not
+    assertEquals("(0) 0>0 100>2 0>2;(30) 0>30 100>32 0>35 100>37 0>37;", result.toString());
+
+    assertEquals(20, RasterizableJobPart.getSkipGapThreshold(5, 1000, 3000), 0.0001);
+    assertEquals(Double.POSITIVE_INFINITY, RasterizableJobPart.getSkipGapThreshold(5, 3000, 3000), 0);
+  }
+
+  /**
+   * Converting the same part twice gives the same commands, the first
+   * conversion must not leave the part in another direction
+   */
+  @Test
+  public void testConversionDoesNotModifyPart()
+  {
+    GreyscaleRaster image = new BufferedImageAdapter(new BufferedImage(301, 257, BufferedImage.TYPE_BYTE_GRAY));
+    Random r = new Random(7);
+    for (int y = 0; y < image.getHeight(); y++)
+    {
+      int from = r.nextInt(40);
+      int to = image.getWidth() - r.nextInt(40);
+      for (int x = 0; x < image.getWidth(); x++)
+      {
+        boolean blank = y % 50 < 13 || x < from || x >= to;
+        image.setGreyScale(x, y, blank ? 255 : r.nextInt(8) * 32);
+      }
+    }
+    Raster3dPart part = new Raster3dPart(image, propertyForPower(80), new Point(10, 20), 500);
+    LaserCutter cutter = new Dummy();
+    VectorCommand[] first = cutter.convertRasterizableToVectorPart(part, 500, true).getCommandList();
+    VectorCommand[] second = cutter.convertRasterizableToVectorPart(part, 500, true).getCommandList();
+    assertEquals(first.length, second.length);
+    for (int i = 0; i < first.length; i++)
+    {
+      assertEquals(first[i].getType(), second[i].getType());
+      if (first[i].getType() == VectorCommand.CmdType.SETPROPERTY)
+      {
+        assertEquals(first[i].getProperty(), second[i].getProperty());
+      }
+      else
+      {
+        assertEquals(first[i].getX(), second[i].getX());
+        assertEquals(first[i].getY(), second[i].getY());
+      }
+    }
+  }
+
   public class RasterizableJobPartImpl extends RasterizableJobPart
   {
     public RasterizableJobPartImpl()
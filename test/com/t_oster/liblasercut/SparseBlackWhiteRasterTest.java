@@ -0,0 +1,101 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the run length encoded SparseBlackWhiteRaster
+ */
+public class SparseBlackWhiteRasterTest
+{
+
+  @Test
+  public void testMatchesDenseRaster()
+  {
+    int width = 77;
+    int height = 12;
+    BlackWhiteRaster dense = new BlackWhiteRaster(width, height);
+    SparseBlackWhiteRaster sparse = new SparseBlackWhiteRaster(width, height);
+    Random r = new Random(42);
+    for (int i = 0; i < 3000; i++)
+    {
+      int x = r.nextInt(width);
+      //leave every 3rd row blank
+      int y = r.nextInt(height / 3) * 3 + 1 + r.nextInt(2);
+      boolean black = r.nextInt(3) > 0;
+      dense.setBlack(x, y, black);
+      sparse.setBlack(x, y, black);
+    }
+    byte[] row = new byte[(width + 7) / 8];
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        assertEquals(dense.isBlack(x, y), sparse.isBlack(x, y));
+      }
+      sparse.getRow(y, row);
+      for (int bx = 0; bx < row.length; bx++)
+      {
+        assertEquals(dense.getByte(bx, y), sparse.getByte(bx, y));
+        assertEquals(dense.getByte(bx, y), row[bx]);
+      }
+    }
+    assertTrue(sparse.isLineBlank(0));
+    assertEquals(1, sparse.nextNonBlankLine(0));
+  }
+
+  @Test
+  public void testRasterPartScanning()
+  {
+    int width = 50;
+    int height = 4;
+    BlackWhiteRaster dense = new BlackWhiteRaster(width, height);
+    SparseBlackWhiteRaster sparse = new SparseBlackWhiteRaster(width, height);
+    int[][] blackRanges = new int[][]{{0, 3}, {10, 11}, {20, 30}, {49, 50}};
+    for (int y = 1; y < height; y++)
+    {
+      for (int[] range : blackRanges)
+      {
+        for (int x = range[0] + y; x < range[1]; x++)
+        {
+          dense.setBlack(x, y, true);
+          sparse.setBlack(x, y, true);
+        }
+      }
+    }
+    LaserProperty prop = new FloatPowerSpeedFocusProperty();
+    RasterPart densePart = new RasterPart(dense, prop, new Point(0, 0), 500);
+    RasterPart sparsePart = new RasterPart(sparse, prop, new Point(0, 0), 500);
+    for (int y = 0; y < height; y++)
+    {
+      assertEquals(densePart.lineIsBlank(y), sparsePart.lineIsBlank(y));
+      assertEquals(densePart.leftMostNonWhitePixel(y), sparsePart.leftMostNonWhitePixel(y));
+      assertEquals(densePart.rightMostNonWhitePixel(y), sparsePart.rightMostNonWhitePixel(y));
+      for (int x = 0; x < width; x++)
+      {
+        assertEquals(densePart.nextColorChangeHeadingRight(x, y), sparsePart.nextColorChangeHeadingRight(x, y));
+        assertEquals(densePart.nextColorChangeHeadingLeft(x, y), sparsePart.nextColorChangeHeadingLeft(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.dithering.Average;
+import com.t_oster.liblasercut.dithering.DitheringAlgorithm;
+import com.t_oster.liblasercut.dithering.FloydSteinberg;
+import com.t_oster.liblasercut.dithering.Halftone;
+import com.t_oster.liblasercut.dithering.Stucki;
+import com.t_oster.liblasercut.drivers.GenericGcodeDriver;
+import com.t_oster.liblasercut.platform.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for StreamingDitheredRaster
+ */
+public class StreamingDitheredRasterTest
+{
+
+  private final GreyscaleRaster image = new GreyscaleRaster()
+  {
+    public int getWidth()
+    {
+      return 77;
+    }
+
+    public int getHeight()
+    {
+      return 53;
+    }
+
+    public int getGreyScale(int x, int y)
+    {
+      return (x * 13 + y * 7) % 256;
+    }
+
+    public void setGreyScale(int x, int y, int grey)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean requiresSequentialReads()
+    {
+      return false;
+    }
+  };
+
+  private void assertSameAsFullDithering(DitheringAlgorithm alg)
+  {
+    BlackWhiteRaster expected = new BlackWhiteRaster(image, alg);
+    StreamingDitheredRaster streamed = new StreamingDitheredRaster(image, alg, 3, null);
+    RasterPart expectedPart = new RasterPart(expected, new FloatPowerSpeedFocusProperty(), new Point(0, 0), 500);
+    RasterPart streamedPart = new RasterPart(streamed, new FloatPowerSpeedFocusProperty(), new Point(0, 0), 500);
+    for (int y = 0; y < image.getHeight(); y++)
+    {
+      assertEquals(alg + " row " + y, expectedPart.getRasterLine(y), streamedPart.getRasterLine(y));
+    }
+    //reading backwards leaves the window
+    for (int y = image.getHeight() - 1; y >= 0; y -= 5)
+    {
+      for (int x = 0; x < image.getWidth(); x++)
+      {
+        assertEquals(expected.isBlack(x, y), streamed.isBlack(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamedRowsAreEqual()
+  {
+    assertSameAsFullDithering(new FloydSteinberg());
+    assertSameAsFullDithering(new Stucki());
+    assertSameAsFullDithering(new Halftone());
+    assertSameAsFullDithering(new Average());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly()
+  {
+    new StreamingDitheredRaster(image, new FloydSteinberg()).setBlack(0, 0, true);
+  }
+
+  @Test
+  public void testDriverReadsRowsInOrder() throws Exception
+  {
+    //tall and thin, so rastering along the columns would be shorter
+    final int[] reads = new int[1];
+    GreyscaleRaster tall = new GreyscaleRaster()
+    {
+      public int getWidth()
+      {
+        return 16;
+      }
+
+      public int getHeight()
+      {
+        return 400;
+      }
+
+      public int getGreyScale(int x, int y)
+      {
+        reads[0]++;
+        return 100;
+      }
+
+      public void setGreyScale(int x, int y, int grey)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      public boolean requiresSequentialReads()
+      {
+        return false;
+      }
+    };
+    StreamingDitheredRaster streamed = new StreamingDitheredRaster(tall, new FloydSteinberg());
+    RasterPart part = new RasterPart(streamed, new FloatPowerSpeedFocusProperty(), new Point(0, 0), 500);
+    assertTrue(part.requiresSequentialReads());
+    //views of the raster pass the question on
+    assertTrue(new CroppedBlackWhiteRaster(streamed, 2, 10, 8, 100).requiresSequentialReads());
+    CompositeBlackWhiteRaster composite = new CompositeBlackWhiteRaster(32, 400);
+    composite.add(new BlackWhiteRaster(8, 8), 0, 0);
+    assertFalse(composite.requiresSequentialReads());
+    composite.add(streamed, 16, 0);
+    assertTrue(composite.requiresSequentialReads());
+    CompositeGreyscaleRaster grey = new CompositeGreyscaleRaster(32, 400);
+    grey.add(composite, 0, 0);
+    assertTrue(grey.requiresSequentialReads());
+    assertFalse(new RasterPart(new StreamingDitheredRaster(tall, new Halftone()), new FloatPowerSpeedFocusProperty(), new Point(0, 0), 500).requiresSequentialReads());
+    reads[0] = 0;
+    GenericGcodeDriver driver = new GenericGcodeDriver();
+    driver.setAutoRasterAxis(true);
+    driver.setSplitRasterIslands(true);
+    LaserJob job = new LaserJob("streamed", "1", "test");
+    job.addPart(part);
+    driver.saveJob(new PrintStream(new ByteArrayOutputStream()), job, new ProgressListener()
+    {
+      public void progressChanged(Object source, int percent)
+      {
+      }
+
+      public void taskChanged(Object source, String taskName)
+      {
+      }
+    });
+    //dithered once from top to bottom, not once per column
+    assertEquals(16 * 400, reads[0]);
+  }
+}
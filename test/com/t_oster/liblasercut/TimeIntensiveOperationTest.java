@@ -0,0 +1,159 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the progress dispatch of TimeIntensiveOperation
+ */
+public class TimeIntensiveOperationTest
+{
+
+  private static class Operation extends TimeIntensiveOperation
+  {
+    void run()
+    {
+      for (int i = 0; i <= 100; i++)
+      {
+        setProgress(i);
+      }
+    }
+  }
+
+  private static class Recorder implements ProgressListener
+  {
+    final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    public void progressChanged(Object source, int percent)
+    {
+      progress.add(percent);
+      events.add(String.valueOf(percent));
+    }
+
+    public void taskChanged(Object source, String taskName)
+    {
+      events.add(taskName);
+    }
+  }
+
+  @Test
+  public void testEveryChangeByDefault()
+  {
+    Operation op = new Operation();
+    Recorder r = new Recorder();
+    op.addProgressListener(r);
+    op.run();
+    assertEquals(100, r.progress.size());
+    assertEquals(100, (int) r.progress.get(99));
+    op.removeProgressListener(r);
+    op.setProgress(5);
+    assertEquals(100, r.progress.size());
+  }
+
+  @Test
+  public void testRateLimit()
+  {
+    Operation op = new Operation();
+    Recorder r = new Recorder();
+    op.addProgressListener(r);
+    op.setMaxProgressRate(1);
+    assertEquals(1, op.getMaxProgressRate());
+    op.run();
+    //the first event, and completion which is never skipped
+    assertEquals(2, r.progress.size());
+    assertEquals(100, (int) r.progress.get(1));
+    assertEquals(100, op.getProgress());
+  }
+
+  @Test
+  public void testRateLimitDeliversLastSuppressedValue() throws InterruptedException
+  {
+    Operation op = new Operation();
+    Recorder r = new Recorder();
+    op.addProgressListener(r);
+    op.setMaxProgressRate(10);
+    op.setProgress(1);
+    op.setProgress(2);
+    op.setProgress(3);
+    assertEquals(1, r.progress.size());
+    long deadline = System.currentTimeMillis() + 5000;
+    while (r.progress.size() < 2 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(2, r.progress.size());
+    assertEquals(3, (int) r.progress.get(1));
+  }
+
+  @Test
+  public void testExecutorCoalescesEvents()
+  {
+    final List<Runnable> queue = new ArrayList<Runnable>();
+    Operation op = new Operation();
+    Recorder r = new Recorder();
+    op.addProgressListener(r);
+    op.setProgressExecutor(new Executor()
+    {
+      public void execute(Runnable command)
+      {
+        queue.add(command);
+      }
+    });
+    op.run();
+    assertTrue(r.progress.isEmpty());
+    assertEquals(1, queue.size());
+    queue.remove(0).run();
+    assertEquals(1, r.progress.size());
+    assertEquals(100, (int) r.progress.get(0));
+    op.setProgress(3);
+    assertEquals(1, queue.size());
+  }
+
+  @Test
+  public void testExecutorKeepsTaskAndProgressOrder()
+  {
+    final List<Runnable> queue = new ArrayList<Runnable>();
+    Operation op = new Operation();
+    Recorder r = new Recorder();
+    op.addProgressListener(r);
+    op.setProgressExecutor(new Executor()
+    {
+      public void execute(Runnable command)
+      {
+        queue.add(command);
+      }
+    });
+    op.setProgress(10);
+    op.fireTaskChanged("b");
+    op.setProgress(20);
+    op.setProgress(30);
+    op.fireTaskChanged("c");
+    assertEquals(1, queue.size());
+    queue.remove(0).run();
+    assertEquals("[10, b, 30, c]", r.events.toString());
+    assertTrue(queue.isEmpty());
+  }
+}
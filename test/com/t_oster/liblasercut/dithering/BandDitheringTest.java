@@ -0,0 +1,150 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.SparseBlackWhiteRaster;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that dithering in parallel bands gives the same result as
+ * dithering on one thread
+ */
+public class BandDitheringTest
+{
+
+  private static final int WIDTH = 157;
+  private static final int HEIGHT = 211;
+
+  private final GreyscaleRaster image = new GreyscaleRaster()
+  {
+    public int getWidth()
+    {
+      return WIDTH;
+    }
+
+    public int getHeight()
+    {
+      return HEIGHT;
+    }
+
+    public int getGreyScale(int x, int y)
+    {
+      return (x * 255 / WIDTH + y * 3) % 256;
+    }
+
+    public void setGreyScale(int x, int y, int grey)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean requiresSequentialReads()
+    {
+      return false;
+    }
+  };
+
+  private void assertSameResult(DitheringAlgorithm alg)
+  {
+    BlackWhiteRaster sequential = alg.dither(image);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      alg.setForkJoinPool(pool);
+      BlackWhiteRaster parallel = alg.dither(image);
+      for (int y = 0; y < HEIGHT; y++)
+      {
+        for (int x = 0; x < WIDTH; x++)
+        {
+          assertEquals(alg + " at " + x + "," + y, sequential.isBlack(x, y), parallel.isBlack(x, y));
+        }
+      }
+    }
+    finally
+    {
+      alg.setForkJoinPool(null);
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelResultIsEqual()
+  {
+    assertSameResult(new Ordered());
+    assertSameResult(new Halftone());
+    assertSameResult(new BrightenedHalftone());
+    assertSameResult(new Grid());
+    assertSameResult(new Average());
+    assertSameResult(new Random());
+    assertSameResult(new None());
+  }
+
+  @Test
+  public void testOrderedThreshold()
+  {
+    Ordered alg = new Ordered();
+    BlackWhiteRaster result = alg.dither(image);
+    int[][] filter = alg.getThresholdMatrix();
+    for (int y = 0; y < HEIGHT; y++)
+    {
+      for (int x = 0; x < WIDTH; x++)
+      {
+        assertEquals(image.getGreyScale(x, y) < filter[x % 4][y % 4], result.isBlack(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testHalftoneIntoSparseRaster()
+  {
+    Halftone alg = new Halftone();
+    BlackWhiteRaster plain = alg.dither(image);
+    SparseBlackWhiteRaster sparse = new SparseBlackWhiteRaster(image, alg);
+    int[][] filter = alg.getThresholdMatrix();
+    for (int y = 0; y < HEIGHT; y++)
+    {
+      for (int x = 0; x < WIDTH; x++)
+      {
+        boolean expected = image.getGreyScale(x, y) < filter[x % 8][y % 8];
+        assertEquals(expected, plain.isBlack(x, y));
+        assertEquals(expected, sparse.isBlack(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testRandomSeed()
+  {
+    Random a = new Random();
+    a.setSeed(42);
+    Random b = (Random) a.clone();
+    BlackWhiteRaster ra = a.dither(image);
+    BlackWhiteRaster rb = b.dither(image);
+    for (int y = 0; y < HEIGHT; y++)
+    {
+      for (int x = 0; x < WIDTH; x++)
+      {
+        assertEquals(ra.isBlack(x, y), rb.isBlack(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DitheringCache
+ */
+public class DitheringCacheTest
+{
+
+  private static BlackWhiteRaster image(int width, int height, int shift)
+  {
+    BlackWhiteRaster r = new BlackWhiteRaster(width, height);
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        r.setBlack(x, y, (x + y + shift) % 3 == 0);
+      }
+    }
+    return r;
+  }
+
+  @Test
+  public void testCachedResultIsReused()
+  {
+    DitheringCache cache = new DitheringCache();
+    Grid grid = new Grid();
+    BlackWhiteRaster first = cache.dither(image(40, 30, 0), grid);
+    //same content in a different object
+    assertSame(first, cache.dither(image(40, 30, 0), grid.clone()));
+    assertEquals(1, cache.getHits());
+    //other content
+    assertNotSame(first, cache.dither(image(40, 30, 1), grid));
+    //other settings
+    grid.setProperty("Blocksize", 3);
+    assertNotSame(first, cache.dither(image(40, 30, 0), grid));
+    //other algorithm
+    assertNotSame(first, cache.dither(image(40, 30, 0), new Average()));
+    assertEquals(1, cache.getHits());
+    assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public void testSizeIsBounded()
+  {
+    //room for two 10x100 results
+    DitheringCache cache = new DitheringCache(2 * 2 * 100);
+    for (int i = 0; i < 5; i++)
+    {
+      cache.dither(image(10, 100, i), new None());
+    }
+    assertEquals(400, cache.getSize());
+    //evicted results are still softly referenced
+    GreyscaleRaster src = image(10, 100, 0);
+    BlackWhiteRaster again = cache.dither(src, new None());
+    for (int y = 0; y < 100; y++)
+    {
+      for (int x = 0; x < 10; x++)
+      {
+        assertEquals(src.getGreyScale(x, y) <= 127, again.isBlack(x, y));
+      }
+    }
+    assertEquals(400, cache.getSize());
+  }
+
+  @Test
+  public void testEquals()
+  {
+    Grid a = new Grid();
+    Grid b = new Grid();
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    b.setProperty("Blockdistance", 7);
+    assertFalse(a.equals(b));
+    assertFalse(new Average().equals(new None()));
+  }
+
+  @Test
+  public void testRandomSeedIsPartOfKey()
+  {
+    DitheringCache cache = new DitheringCache();
+    Random a = new Random();
+    a.setSeed(1);
+    Random b = new Random();
+    b.setSeed(2);
+    assertFalse(a.equals(b));
+    assertEquals(a, a.clone());
+    assertEquals(a.hashCode(), a.clone().hashCode());
+    BlackWhiteRaster first = cache.dither(image(40, 30, 0), a);
+    assertNotSame(first, cache.dither(image(40, 30, 0), b));
+    assertSame(first, cache.dither(image(40, 30, 0), a.clone()));
+    b.setProperty("Seed", 1);
+    assertSame(first, cache.dither(image(40, 30, 0), b));
+    assertEquals(new Random(), new Random());
+  }
+}
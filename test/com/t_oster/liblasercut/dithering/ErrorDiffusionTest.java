@@ -0,0 +1,116 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ErrorDiffusion kernels
+ */
+public class ErrorDiffusionTest
+{
+
+  private static GreyscaleRaster flat(final int width, final int height, final int grey)
+  {
+    return new GreyscaleRaster()
+    {
+      public int getWidth()
+      {
+        return width;
+      }
+
+      public int getHeight()
+      {
+        return height;
+      }
+
+      public int getGreyScale(int x, int y)
+      {
+        return grey;
+      }
+
+      public void setGreyScale(int x, int y, int grey)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      public boolean requiresSequentialReads()
+      {
+        return false;
+      }
+    };
+  }
+
+  private static double blackRatio(BlackWhiteRaster r)
+  {
+    int black = 0;
+    for (int y = 0; y < r.getHeight(); y++)
+    {
+      for (int x = 0; x < r.getWidth(); x++)
+      {
+        black += r.isBlack(x, y) ? 1 : 0;
+      }
+    }
+    return (double) black / (r.getWidth() * r.getHeight());
+  }
+
+  private static ErrorDiffusion[] kernels()
+  {
+    return new ErrorDiffusion[]{new JarvisJudiceNinke(), new Stucki(), new Sierra(),
+      new TwoRowSierra(), new SierraLite(), new Atkinson()};
+  }
+
+  @Test
+  public void testToneIsKept()
+  {
+    for (ErrorDiffusion alg : kernels())
+    {
+      for (boolean serpentine : new boolean[]{false, true})
+      {
+        alg.setSerpentine(serpentine);
+        assertEquals(alg.toString(), 0, blackRatio(alg.dither(flat(64, 64, 255))), 0);
+        assertEquals(alg.toString(), 1, blackRatio(alg.dither(flat(64, 64, 0))), 0);
+        if (!(alg instanceof Atkinson))
+        {
+          //Atkinson drops a quarter of the error on purpose
+          assertEquals(alg.toString(), 0.75, blackRatio(alg.dither(flat(64, 64, 64))), 0.03);
+          assertEquals(alg.toString(), 0.5, blackRatio(alg.dither(flat(64, 64, 128))), 0.03);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSettingsAndEnum()
+  {
+    ErrorDiffusion alg = new Stucki();
+    alg.setProperty("Serpentine", true);
+    ErrorDiffusion clone = (ErrorDiffusion) alg.clone();
+    assertTrue(clone.isSerpentine());
+    assertEquals(Boolean.TRUE, clone.getProperty("Serpentine"));
+    assertEquals("Atkinson", BlackWhiteRaster.getDitheringAlgorithm(BlackWhiteRaster.DitherAlgorithm.ATKINSON).toString());
+    for (BlackWhiteRaster.DitherAlgorithm a : BlackWhiteRaster.DitherAlgorithm.values())
+    {
+      assertNotNull(BlackWhiteRaster.getDitheringAlgorithm(a));
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares FloydSteinberg on one and several threads with a plain
+ * implementation of the algorithm
+ */
+public class FloydSteinbergTest
+{
+
+  private static GreyscaleRaster image(final int width, final int height)
+  {
+    return new GreyscaleRaster()
+    {
+      public int getWidth()
+      {
+        return width;
+      }
+
+      public int getHeight()
+      {
+        return height;
+      }
+
+      public int getGreyScale(int x, int y)
+      {
+        return (int) (127.5 + 127.5 * Math.sin(x * 0.05) * Math.cos(y * 0.07));
+      }
+
+      public void setGreyScale(int x, int y, int grey)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      public boolean requiresSequentialReads()
+      {
+        return false;
+      }
+    };
+  }
+
+  private static boolean[][] reference(GreyscaleRaster src)
+  {
+    int width = src.getWidth();
+    int height = src.getHeight();
+    int[][] input = new int[height][width];
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        input[y][x] = src.getGreyScale(x, y);
+      }
+    }
+    boolean[][] result = new boolean[height][width];
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        result[y][x] = input[y][x] <= 127;
+        int error = input[y][x] - (result[y][x] ? 0 : 255);
+        if (x + 1 < width)
+        {
+          input[y][x + 1] += 7 * error / 16;
+          if (y + 1 < height)
+          {
+            input[y + 1][x + 1] += 1 * error / 16;
+          }
+        }
+        if (y + 1 < height)
+        {
+          input[y + 1][x] += 5 * error / 16;
+          if (x > 0)
+          {
+            input[y + 1][x - 1] += 3 * error / 16;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void assertMatches(boolean[][] expected, BlackWhiteRaster actual)
+  {
+    for (int y = 0; y < expected.length; y++)
+    {
+      for (int x = 0; x < expected[y].length; x++)
+      {
+        assertEquals("pixel " + x + "," + y, expected[y][x], actual.isBlack(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testSequential()
+  {
+    GreyscaleRaster src = image(131, 77);
+    assertMatches(reference(src), new FloydSteinberg().dither(src));
+  }
+
+  @Test
+  public void testParallelIsIdentical()
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      for (int width : new int[]{1, 2, 3, 33, 300})
+      {
+        GreyscaleRaster src = image(width, 97);
+        FloydSteinberg alg = new FloydSteinberg();
+        alg.setForkJoinPool(pool);
+        assertMatches(reference(src), alg.dither(src));
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+}
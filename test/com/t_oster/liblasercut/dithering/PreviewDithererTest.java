@@ -0,0 +1,158 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.AreaAveragedGreyscaleRaster;
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PreviewDitherer and AreaAveragedGreyscaleRaster
+ */
+public class PreviewDithererTest
+{
+
+  private static GreyscaleRaster stripes(final int width, final int height)
+  {
+    return new GreyscaleRaster()
+    {
+      public int getWidth()
+      {
+        return width;
+      }
+
+      public int getHeight()
+      {
+        return height;
+      }
+
+      public int getGreyScale(int x, int y)
+      {
+        return x % 2 == 0 ? 0 : 255;
+      }
+
+      public void setGreyScale(int x, int y, int grey)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      public boolean requiresSequentialReads()
+      {
+        return false;
+      }
+    };
+  }
+
+  @Test
+  public void testAreaAveraging()
+  {
+    //one pixel stripes average to grey instead of aliasing
+    AreaAveragedGreyscaleRaster half = new AreaAveragedGreyscaleRaster(stripes(100, 10), 50, 5);
+    //uneven scale, every target pixel covers 1.5 source pixels
+    AreaAveragedGreyscaleRaster uneven = new AreaAveragedGreyscaleRaster(stripes(99, 9), 66, 6);
+    for (int y = 0; y < 5; y++)
+    {
+      for (int x = 0; x < 50; x++)
+      {
+        assertEquals(128, half.getGreyScale(x, y));
+      }
+    }
+    long sum = 0;
+    for (int y = 0; y < 6; y++)
+    {
+      for (int x = 0; x < 66; x++)
+      {
+        sum += uneven.getGreyScale(x, y);
+      }
+    }
+    //the source has 50 black and 49 white columns
+    assertEquals(255.0 * 49 / 99, sum / (66.0 * 6), 1);
+  }
+
+  @Test
+  public void testProgressiveRefinement() throws InterruptedException
+  {
+    final List<BlackWhiteRaster> previews = new ArrayList<BlackWhiteRaster>();
+    final List<Boolean> finished = new ArrayList<Boolean>();
+    PreviewDitherer d = new PreviewDitherer(stripes(2000, 1000), new FloydSteinberg(), 400, 400, new PreviewDitherer.Listener()
+    {
+      public void previewReady(PreviewDitherer source, BlackWhiteRaster preview, boolean last)
+      {
+        previews.add(preview);
+        finished.add(last);
+      }
+    });
+    d.start();
+    d.join();
+    assertTrue(d.isDone());
+    assertEquals(4, previews.size());
+    assertEquals(50, previews.get(0).getWidth());
+    assertEquals(400, previews.get(3).getWidth());
+    assertEquals(200, previews.get(3).getHeight());
+    assertEquals(false, finished.get(2));
+    assertEquals(true, finished.get(3));
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException
+  {
+    final List<BlackWhiteRaster> previews = new ArrayList<BlackWhiteRaster>();
+    PreviewDitherer d = new PreviewDitherer(stripes(200, 100), new FloydSteinberg(), 100, 100, new PreviewDitherer.Listener()
+    {
+      public void previewReady(PreviewDitherer source, BlackWhiteRaster preview, boolean last)
+      {
+        previews.add(preview);
+      }
+    });
+    d.cancel();
+    d.start();
+    d.join();
+    assertTrue(d.isDone());
+    assertTrue(previews.isEmpty());
+  }
+
+  @Test
+  public void testCachedRefinements()
+  {
+    final List<BlackWhiteRaster> previews = new ArrayList<BlackWhiteRaster>();
+    PreviewDitherer.Listener listener = new PreviewDitherer.Listener()
+    {
+      public void previewReady(PreviewDitherer source, BlackWhiteRaster preview, boolean last)
+      {
+        previews.add(preview);
+      }
+    };
+    DitheringCache cache = new DitheringCache();
+    new PreviewDitherer(stripes(800, 400), new FloydSteinberg(), 400, 400, listener, cache).run();
+    assertEquals(4, cache.getMisses());
+    assertEquals(0, cache.getHits());
+    new PreviewDitherer(stripes(800, 400), new FloydSteinberg(), 400, 400, listener, cache).run();
+    assertEquals(4, cache.getMisses());
+    assertEquals(4, cache.getHits());
+    assertEquals(8, previews.size());
+    for (int i = 0; i < 4; i++)
+    {
+      assertSame(previews.get(i), previews.get(i + 4));
+    }
+  }
+}
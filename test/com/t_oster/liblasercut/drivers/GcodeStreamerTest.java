@@ -0,0 +1,347 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.ProgressListener;
+import com.t_oster.liblasercut.VectorPart;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests GcodeStreamer against a simulated controller
+ */
+public class GcodeStreamerTest
+{
+
+  /**
+   * A controller with a receive buffer of limited size in bytes, which
+   * answers every line with 'ok', or with an error if it contains "BAD"
+   */
+  private static class Controller extends Thread
+  {
+    final int capacity;
+    final BufferedReader in;
+    final PrintStream out;
+    final List<String> received = new ArrayList<String>();
+    volatile int maxUsed = 0;
+    volatile int maxLines = 0;
+
+    Controller(int capacity, PipedOutputStream host, PipedInputStream responses) throws IOException
+    {
+      this.capacity = capacity;
+      this.in = new BufferedReader(new InputStreamReader(new PipedInputStream(host, 4096), "US-ASCII"));
+      this.out = new PrintStream(new PipedOutputStream(responses), true, "US-ASCII");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      LinkedList<Integer> buffer = new LinkedList<Integer>();
+      int used = 0;
+      try
+      {
+        while (true)
+        {
+          //take everything the host has sent so far into the buffer
+          while (buffer.isEmpty() || in.ready())
+          {
+            String line = in.readLine();
+            if (line == null)
+            {
+              return;
+            }
+            received.add(line);
+            buffer.add(line.length() + 1);
+            used += line.length() + 1;
+            maxUsed = Math.max(maxUsed, used);
+            maxLines = Math.max(maxLines, buffer.size());
+          }
+          Thread.sleep(1);
+          used -= buffer.poll();
+          out.println(received.get(received.size() - buffer.size() - 1).contains("BAD") ? "error:20" : "ok");
+          if (received.size() % 10 == 0)
+          {
+            out.println("<Run|MPos:0.000,0.000,0.000>");
+          }
+        }
+      }
+      catch (Exception e)
+      {
+      }
+    }
+  }
+
+  /**
+   * A controller which checks line numbers and checksums like Marlin.
+   * The lines whose numbers are in corrupt are damaged on their first
+   * transmission.
+   */
+  private static class NumberingController extends Thread
+  {
+    final BufferedReader in;
+    final PrintStream out;
+    final List<String> accepted = new ArrayList<String>();
+    final List<Integer> corrupt;
+    int resendRequests = 0;
+
+    NumberingController(PipedOutputStream host, PipedInputStream responses, Integer... corrupt) throws IOException
+    {
+      this.in = new BufferedReader(new InputStreamReader(new PipedInputStream(host, 4096), "US-ASCII"));
+      this.out = new PrintStream(new PipedOutputStream(responses), true, "US-ASCII");
+      this.corrupt = new ArrayList<Integer>(Arrays.asList(corrupt));
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      int last = -1;
+      try
+      {
+        for (String line = in.readLine(); line != null; line = in.readLine())
+        {
+          Thread.sleep(1);
+          int star = line.lastIndexOf('*');
+          int space = line.indexOf(' ');
+          int number = Integer.parseInt(line.substring(1, space));
+          boolean damaged = corrupt.remove((Integer) number);
+          if (damaged || GcodeStreamer.checksum(line.substring(0, star)) != Integer.parseInt(line.substring(star + 1)))
+          {
+            out.println("Error:checksum mismatch, Last Line: " + last);
+            out.println("Resend: " + (last + 1));
+            resendRequests++;
+          }
+          else if (number != last + 1 && !line.contains("M110"))
+          {
+            out.println("Error:Line Number is not Last Line Number+1, Last Line: " + last);
+            out.println("Resend: " + (last + 1));
+            resendRequests++;
+          }
+          else
+          {
+            last = number;
+            accepted.add(line.substring(space + 1, star));
+          }
+          out.println("ok");
+        }
+      }
+      catch (Exception e)
+      {
+      }
+    }
+  }
+
+  private Controller controller;
+  private GcodeStreamer streamer;
+
+  private void connect(int capacity, boolean countBytes) throws IOException
+  {
+    PipedOutputStream host = new PipedOutputStream();
+    PipedInputStream responses = new PipedInputStream(4096);
+    controller = new Controller(countBytes ? capacity : 4096, host, responses);
+    controller.start();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(responses, "US-ASCII"));
+    streamer = new GcodeStreamer(new PrintStream(host, false, "US-ASCII"), "\n", capacity, countBytes)
+    {
+      @Override
+      String readResponse() throws IOException
+      {
+        return in.readLine();
+      }
+    };
+  }
+
+  @Test(timeout = 20000)
+  public void testStreamsWithinBuffer() throws IOException
+  {
+    connect(127, true);
+    List<String> sent = new ArrayList<String>();
+    for (int i = 0; i < 500; i++)
+    {
+      String line = "G1X" + i + "Y" + (i * 7 % 100) + "S" + (i % 1000);
+      sent.add(line);
+      streamer.send(line);
+      assertTrue(streamer.getUsed() <= 127);
+    }
+    streamer.finish();
+    assertEquals(0, streamer.getUsed());
+    assertEquals(sent, controller.received);
+    assertTrue(controller.maxUsed <= 127);
+    //more than one line was in flight at a time
+    assertTrue(controller.maxUsed > 30);
+  }
+
+  @Test(timeout = 20000)
+  public void testLineWindow() throws IOException
+  {
+    connect(4, false);
+    for (int i = 0; i < 200; i++)
+    {
+      streamer.send("G1 X" + i + " Y" + i + " some long comment to exceed a byte limit");
+      assertTrue(streamer.getUsed() <= 4);
+    }
+    streamer.finish();
+    assertEquals(200, controller.received.size());
+    assertTrue(controller.maxLines <= 4);
+    assertTrue(controller.maxLines > 1);
+  }
+
+  @Test
+  public void testChecksum()
+  {
+    //example from the RepRap wiki
+    assertEquals(57, GcodeStreamer.checksum("N3 T0"));
+    assertEquals(7, GcodeStreamer.parseResendRequest("Resend: 7"));
+    assertEquals(12, GcodeStreamer.parseResendRequest("rs N12"));
+    assertEquals(-1, GcodeStreamer.parseResendRequest("ok"));
+  }
+
+  @Test(timeout = 20000)
+  public void testResend() throws IOException
+  {
+    PipedOutputStream host = new PipedOutputStream();
+    PipedInputStream responses = new PipedInputStream(4096);
+    NumberingController marlin = new NumberingController(host, responses, 5, 37, 38, 120);
+    marlin.start();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(responses, "US-ASCII"));
+    streamer = new GcodeStreamer(new PrintStream(host, false, "US-ASCII"), "\n", 8, false)
+    {
+      @Override
+      String readResponse() throws IOException
+      {
+        return in.readLine();
+      }
+    };
+    streamer.setLineNumbers(true);
+    List<String> sent = new ArrayList<String>();
+    sent.add("M110 N0");
+    for (int i = 0; i < 200; i++)
+    {
+      String line = "G1 X" + i + " Y" + (i % 13);
+      sent.add(line);
+      streamer.send(line + " ;comment");
+      if (i % 50 == 0)
+      {
+        //comment lines are not sent at all
+        streamer.send("; a comment");
+      }
+    }
+    streamer.finish();
+    assertEquals(sent, marlin.accepted);
+    assertTrue(marlin.resendRequests >= 4);
+  }
+
+  @Test(timeout = 20000)
+  public void testErrorResponse() throws IOException
+  {
+    connect(64, true);
+    try
+    {
+      for (int i = 0; i < 100; i++)
+      {
+        streamer.send(i == 50 ? "G1 BAD" : "G1X" + i);
+      }
+      streamer.finish();
+      fail("error response was ignored");
+    }
+    catch (IOException e)
+    {
+      assertTrue(e.getMessage(), e.getMessage().contains("error:20") && e.getMessage().contains("G1 BAD"));
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testLineTooLong() throws IOException
+  {
+    connect(8, true);
+    try
+    {
+      streamer.send("G1X100Y100");
+      fail("line longer than the buffer was sent");
+    }
+    catch (IOException e)
+    {
+    }
+    streamer.close();
+  }
+
+  @Test(timeout = 20000)
+  public void testMarlinSendsLineNumbers() throws Exception
+  {
+    PipedOutputStream host = new PipedOutputStream();
+    PipedInputStream responses = new PipedInputStream(4096);
+    NumberingController board = new NumberingController(host, responses, 3, 9);
+    board.start();
+    final BufferedReader boardOut = new BufferedReader(new InputStreamReader(responses, "US-ASCII"));
+    final PrintStream boardIn = new PrintStream(host, false, "US-ASCII");
+    Marlin marlin = new Marlin()
+    {
+      @Override
+      protected void connect(ProgressListener pl)
+      {
+        in = boardOut;
+        out = boardIn;
+      }
+    };
+    marlin.setLineNumbers(true);
+    marlin.setMaxLinesInFlight(4);
+    VectorPart vp = new VectorPart(marlin.getLaserPropertyForVectorPart(), 500);
+    for (int i = 0; i < 20; i++)
+    {
+      vp.moveto(10 * i, 0);
+      vp.lineto(10 * i, 100);
+    }
+    LaserJob job = new LaserJob("numbered", "1", "test");
+    job.addPart(vp);
+    marlin.sendJob(job, new ProgressListener()
+    {
+      public void progressChanged(Object source, int percent)
+      {
+      }
+
+      public void taskChanged(Object source, String taskName)
+      {
+      }
+    }, new ArrayList<String>());
+    assertEquals("M110 N0", board.accepted.get(0));
+    assertTrue(board.accepted.contains("M5"));
+    int moves = 0;
+    for (String line : board.accepted)
+    {
+      if (line.startsWith("G0") || line.startsWith("G1"))
+      {
+        moves++;
+      }
+    }
+    assertTrue(moves >= 40);
+    assertTrue(board.resendRequests >= 2);
+  }
+}
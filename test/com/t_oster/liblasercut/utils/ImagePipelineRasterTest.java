@@ -0,0 +1,103 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ImagePipelineRaster
+ */
+public class ImagePipelineRasterTest
+{
+
+  private BufferedImage grey(int w, int h, int value)
+  {
+    BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < h; y++)
+    {
+      for (int x = 0; x < w; x++)
+      {
+        img.setRGB(x, y, (value << 16) | (value << 8) | value);
+      }
+    }
+    return img;
+  }
+
+  @Test
+  public void testDownscaleAveragesStripes()
+  {
+    BufferedImage img = grey(40, 20, 255);
+    for (int y = 0; y < 20; y++)
+    {
+      for (int x = 0; x < 40; x += 2)
+      {
+        img.setRGB(x, y, 0);
+      }
+    }
+    ImagePipelineRaster r = new ImagePipelineRaster(img, 20, 10);
+    for (int y = 0; y < r.getHeight(); y++)
+    {
+      for (int x = 0; x < r.getWidth(); x++)
+      {
+        assertEquals(128, r.getGreyScale(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testUpscaleMatchesAdapter()
+  {
+    BufferedImage img = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 5; y++)
+    {
+      for (int x = 0; x < 7; x++)
+      {
+        img.setRGB(x, y, (x * 30 << 16) | (y * 50 << 8) | (x * y * 7));
+      }
+    }
+    BufferedImageAdapter ad = new BufferedImageAdapter(img);
+    ImagePipelineRaster r = new ImagePipelineRaster(img, 21, 15);
+    for (int y = 0; y < 15; y++)
+    {
+      for (int x = 0; x < 21; x++)
+      {
+        assertEquals(ad.getGreyScale(x / 3, y / 3), r.getGreyScale(x, y), 1);
+      }
+    }
+  }
+
+  @Test
+  public void testAdjustments()
+  {
+    ImagePipelineRaster r = new ImagePipelineRaster(grey(4, 4, 100), 4, 4);
+    assertEquals(100, r.getGreyScale(0, 0));
+    r.setColorShift(50);
+    assertEquals(150, r.getGreyScale(0, 0));
+    r.setColorShift(200);
+    assertEquals(255, r.getGreyScale(1, 0));
+    r.setInvertColors(true);
+    assertEquals(0, r.getGreyScale(1, 0));
+    r.setColorShift(0);
+    r.setInvertColors(false);
+    r.setGamma(2);
+    assertEquals(Math.round(255 * Math.pow(100 / 255.0, 2)), r.getGreyScale(2, 0));
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PixelKernels
+ */
+public class PixelKernelsTest
+{
+
+  @Test
+  public void testPackBelow()
+  {
+    Random r = new Random(1);
+    for (int count = 1; count < 40; count++)
+    {
+      int[] grey = new int[count];
+      int[] thresholds = new int[count];
+      for (int x = 0; x < count; x++)
+      {
+        grey[x] = r.nextInt(256);
+        thresholds[x] = r.nextInt(256);
+      }
+      byte[] single = new byte[(count + 7) / 8];
+      byte[] perPixel = new byte[(count + 7) / 8];
+      PixelKernels.packBelow(grey, count, 128, single);
+      PixelKernels.packBelow(grey, count, thresholds, perPixel);
+      for (int x = 0; x < count; x++)
+      {
+        int bit = 0x80 >> (x % 8);
+        assertEquals(grey[x] < 128, (single[x / 8] & bit) != 0);
+        assertEquals(grey[x] < thresholds[x], (perPixel[x / 8] & bit) != 0);
+      }
+    }
+  }
+
+  @Test
+  public void testLuminance()
+  {
+    int[] rgb = new int[]{0xFFFFFF, 0x000000, 0xFF0000, 0x00FF00, 0x0000FF, 0x808080};
+    int[] grey = new int[rgb.length];
+    PixelKernels.luminance(rgb, 0, grey, 0, rgb.length);
+    for (int i = 0; i < rgb.length; i++)
+    {
+      assertEquals(PixelKernels.luminance(rgb[i]), grey[i]);
+    }
+    assertEquals(255, grey[0]);
+    assertEquals(0, grey[1]);
+    assertEquals(128, grey[5]);
+  }
+
+  @Test
+  public void testAdapterRowMatchesPixels()
+  {
+    Random r = new Random(2);
+    BufferedImage img = new BufferedImage(13, 3, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 3; y++)
+    {
+      for (int x = 0; x < 13; x++)
+      {
+        img.setRGB(x, y, r.nextInt(0x1000000));
+      }
+    }
+    BufferedImageAdapter ad = new BufferedImageAdapter(img, true);
+    ad.setColorShift(-20);
+    int[] row = new int[13];
+    for (int y = 0; y < 3; y++)
+    {
+      ad.getGreyScaleRow(y, row);
+      for (int x = 0; x < 13; x++)
+      {
+        assertEquals(ad.getGreyScale(x, y), row[x]);
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.FloatPowerSpeedFocusProperty;
+import com.t_oster.liblasercut.RasterPart;
+import com.t_oster.liblasercut.RasterizableJobPart;
+import com.t_oster.liblasercut.platform.Point;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RasterIslandSegmenter
+ */
+public class RasterIslandSegmenterTest
+{
+
+  @Test
+  public void testTwoDistantIslands()
+  {
+    BlackWhiteRaster image = new BlackWhiteRaster(400, 30);
+    for (int y = 2; y < 28; y++)
+    {
+      for (int x = 5; x < 20; x++)
+      {
+        image.setBlack(x, y, true);
+        image.setBlack(x + 370, y, true);
+      }
+    }
+    RasterPart part = new RasterPart(image, new FloatPowerSpeedFocusProperty(), new Point(100, 50), 254);
+    RasterIslandSegmenter.Segmentation result = new RasterIslandSegmenter().segment(part, 1, 1000, 3000);
+    List<RasterizableJobPart> parts = result.getParts();
+    assertEquals(2, parts.size());
+    assertTrue(result.getTimeSaved() > 0);
+    //every black pixel is in exactly one island at the same position
+    int black = 0;
+    for (RasterizableJobPart p : parts)
+    {
+      Point start = p.getStartPosition(0);
+      for (int y = 0; y < p.getRasterHeight(); y++)
+      {
+        for (int x = 0; x < p.getRasterWidth(); x++)
+        {
+          if (p.getImage().getGreyScale(x, y) < 255)
+          {
+            assertTrue(image.isBlack(start.x - 100 + x, start.y - 50 + y));
+            black++;
+          }
+        }
+      }
+    }
+    assertEquals(2 * 26 * 15, black);
+    //the island closer to the origin comes first
+    assertTrue(parts.get(0).getStartPosition(0).x < parts.get(1).getStartPosition(0).x);
+  }
+
+  @Test
+  public void testSingleIslandIsNotSplit()
+  {
+    BlackWhiteRaster image = new BlackWhiteRaster(50, 50);
+    image.setBlack(10, 10, true);
+    image.setBlack(12, 11, true);
+    RasterPart part = new RasterPart(image, new FloatPowerSpeedFocusProperty(), new Point(0, 0), 254);
+    RasterIslandSegmenter.Segmentation result = new RasterIslandSegmenter().segment(part, 1, 1000, 3000);
+    assertEquals(1, result.getParts().size());
+    assertSame(part, result.getParts().get(0));
+    assertEquals(0, result.getTimeSaved(), 0);
+  }
+}